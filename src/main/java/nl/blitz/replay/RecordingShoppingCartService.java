@@ -0,0 +1,97 @@
+package nl.blitz.replay;
+
+import nl.blitz.shoppingcart.CartItem;
+import nl.blitz.shoppingcart.PaymentResult;
+import nl.blitz.shoppingcart.ShoppingCartService;
+
+import java.util.List;
+
+/**
+ * Decorator that records the traffic-shaping calls made on a cart (adding items, applying
+ * discounts, checkout and payments) into a trace. Each instance is one session in the trace.
+ */
+public class RecordingShoppingCartService implements ShoppingCartService {
+    private final ShoppingCartService delegate;
+    private final TraceWriter trace;
+    private final int session;
+
+    public RecordingShoppingCartService(ShoppingCartService delegate, TraceWriter trace) {
+        this.delegate = delegate;
+        this.trace = trace;
+        this.session = trace.newSession();
+    }
+
+    @Override
+    public void addItem(String productName, double price, int quantity) {
+        trace.write(new TraceEvent(TraceOp.ADD_ITEM, session, trace.offset(), productName, null, price, quantity));
+        delegate.addItem(productName, price, quantity);
+    }
+
+    @Override
+    public List<CartItem> getItems() {
+        return delegate.getItems();
+    }
+
+    @Override
+    public double calculateSubtotal() {
+        return delegate.calculateSubtotal();
+    }
+
+    @Override
+    public double calculateDiscountAmount() {
+        return delegate.calculateDiscountAmount();
+    }
+
+    @Override
+    public double calculateTotal() {
+        return delegate.calculateTotal();
+    }
+
+    @Override
+    public boolean applyDiscount(String discountCode) {
+        trace.write(new TraceEvent(TraceOp.APPLY_DISCOUNT, session, trace.offset(), discountCode, null, 0, 0));
+        return delegate.applyDiscount(discountCode);
+    }
+
+    @Override
+    public String getAppliedDiscountCode() {
+        return delegate.getAppliedDiscountCode();
+    }
+
+    @Override
+    public void checkout(String customerEmail, String paymentMethod) {
+        trace.write(new TraceEvent(TraceOp.CHECKOUT, session, trace.offset(), customerEmail, paymentMethod, 0, 0));
+        delegate.checkout(customerEmail, paymentMethod);
+    }
+
+    @Override
+    public String getOrderId() {
+        return delegate.getOrderId();
+    }
+
+    @Override
+    public PaymentResult processPayment(String paymentMethod, double amount) {
+        trace.write(new TraceEvent(TraceOp.PROCESS_PAYMENT, session, trace.offset(), paymentMethod, null, amount, 0));
+        return delegate.processPayment(paymentMethod, amount);
+    }
+
+    @Override
+    public PaymentResult getLastPaymentResult() {
+        return delegate.getLastPaymentResult();
+    }
+
+    @Override
+    public void sendOrderConfirmationEmail(String customerEmail) {
+        delegate.sendOrderConfirmationEmail(customerEmail);
+    }
+
+    @Override
+    public String getEmailSentTo() {
+        return delegate.getEmailSentTo();
+    }
+
+    @Override
+    public String generateOrderId() {
+        return delegate.generateOrderId();
+    }
+}
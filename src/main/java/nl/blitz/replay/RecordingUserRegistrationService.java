@@ -0,0 +1,128 @@
+package nl.blitz.replay;
+
+import nl.blitz.userregistration.RegistrationResult;
+import nl.blitz.userregistration.User;
+import nl.blitz.userregistration.UserRegistration;
+import nl.blitz.userregistration.UserRegistrationService;
+import nl.blitz.userregistration.VerificationToken;
+
+import java.util.List;
+
+/**
+ * Decorator that records registrations and activations into a trace.
+ *
+ * Passwords are never written to the trace; only their length and whether they passed
+ * validation are kept, which is enough for a replay to exercise the same code paths.
+ */
+public class RecordingUserRegistrationService implements UserRegistrationService {
+    private final UserRegistrationService delegate;
+    private final TraceWriter trace;
+
+    public RecordingUserRegistrationService(UserRegistrationService delegate, TraceWriter trace) {
+        this.delegate = delegate;
+        this.trace = trace;
+    }
+
+    @Override
+    public RegistrationResult registerUser(String email, String password) {
+        long offset = trace.offset();
+        RegistrationResult result = delegate.registerUser(email, password);
+        int length = password == null ? 0 : password.length();
+        // A rejection for another reason says nothing about the password; replay it as valid
+        boolean accepted = !UserRegistration.WEAK_PASSWORD.equals(result.getMessage());
+        trace.write(new TraceEvent(TraceOp.REGISTER_USER, 0, offset, email, result.getVerificationToken(),
+                accepted ? 1 : 0, length));
+        return result;
+    }
+
+    @Override
+    public User getUserByEmail(String email) {
+        return delegate.getUserByEmail(email);
+    }
+
+    @Override
+    public List<User> getAllUsers() {
+        return delegate.getAllUsers();
+    }
+
+    @Override
+    public boolean userExists(String email) {
+        return delegate.userExists(email);
+    }
+
+    @Override
+    public boolean isValidEmail(String email) {
+        return delegate.isValidEmail(email);
+    }
+
+    @Override
+    public boolean isValidPassword(String password) {
+        return delegate.isValidPassword(password);
+    }
+
+    @Override
+    public boolean activateAccount(String email, String token) {
+        trace.write(new TraceEvent(TraceOp.ACTIVATE_ACCOUNT, 0, trace.offset(), email, token, 0, 0));
+        return delegate.activateAccount(email, token);
+    }
+
+    @Override
+    public boolean isAccountActivated(String email) {
+        return delegate.isAccountActivated(email);
+    }
+
+    @Override
+    public String hashPassword(String password) {
+        return delegate.hashPassword(password);
+    }
+
+    @Override
+    public boolean verifyPassword(String password, String hashedPassword) {
+        return delegate.verifyPassword(password, hashedPassword);
+    }
+
+    @Override
+    public String generateVerificationToken(String email) {
+        return delegate.generateVerificationToken(email);
+    }
+
+    @Override
+    public VerificationToken getVerificationToken(String token) {
+        return delegate.getVerificationToken(token);
+    }
+
+    @Override
+    public boolean verifyToken(String token, String email) {
+        return delegate.verifyToken(token, email);
+    }
+
+    @Override
+    public void sendVerificationEmail(String email, String token) {
+        delegate.sendVerificationEmail(email, token);
+    }
+
+    @Override
+    public void sendWelcomeEmail(String email) {
+        delegate.sendWelcomeEmail(email);
+    }
+
+    @Override
+    public String getLastVerificationEmailSentTo() {
+        return delegate.getLastVerificationEmailSentTo();
+    }
+
+    @Override
+    public String getLastWelcomeEmailSentTo() {
+        return delegate.getLastWelcomeEmailSentTo();
+    }
+
+    @Override
+    public void initializeUserProfile(User user) {
+        delegate.initializeUserProfile(user);
+    }
+
+    @Override
+    public List<String> getRegistrationLogs() {
+        return delegate.getRegistrationLogs();
+    }
+}
@@ -0,0 +1,125 @@
+package nl.blitz.replay;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Throughput and latency percentiles of a replay, overall and per operation.
+ */
+public class ReplayReport {
+    private final Map<TraceOp, long[]> latencies;
+    private final long[] all;
+    private final long elapsedNanos;
+    private final int skipped;
+
+    private ReplayReport(Map<TraceOp, long[]> latencies, long[] all, long elapsedNanos, int skipped) {
+        this.latencies = latencies;
+        this.all = all;
+        this.elapsedNanos = elapsedNanos;
+        this.skipped = skipped;
+    }
+
+    public int getCount() {
+        return all.length;
+    }
+
+    public int getCount(TraceOp op) {
+        long[] samples = latencies.get(op);
+        return samples == null ? 0 : samples.length;
+    }
+
+    /**
+     * Number of recorded calls that were not replayed because no service was given for them.
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Replayed calls per second of wall-clock replay time.
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : all.length / (elapsedNanos / 1e9);
+    }
+
+    public long getPercentileNanos(double percentile) {
+        return percentile(all, percentile);
+    }
+
+    public long getPercentileNanos(TraceOp op, double percentile) {
+        long[] samples = latencies.get(op);
+        return samples == null ? 0 : percentile(samples, percentile);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Replayed %d calls in %.3f s (%.1f calls/s), skipped %d%n",
+                all.length, elapsedNanos / 1e9, getThroughput(), skipped));
+        report.append(String.format("%-18s %8s %10s %10s %10s %10s%n", "operation", "count", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Map.Entry<TraceOp, long[]> entry : latencies.entrySet()) {
+            appendRow(report, entry.getKey().name(), entry.getValue());
+        }
+        appendRow(report, "ALL", all);
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String label, long[] samples) {
+        report.append(String.format("%-18s %8d %10.3f %10.3f %10.3f %10.3f%n", label, samples.length,
+                percentile(samples, 0.50) / 1e6, percentile(samples, 0.90) / 1e6,
+                percentile(samples, 0.99) / 1e6, percentile(samples, 1.0) / 1e6));
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    static class Builder {
+        private final Map<TraceOp, long[]> samples = new EnumMap<>(TraceOp.class);
+        private final Map<TraceOp, Integer> counts = new EnumMap<>(TraceOp.class);
+        private int skipped;
+
+        synchronized void record(TraceOp op, long latencyNanos) {
+            long[] values = samples.computeIfAbsent(op, k -> new long[64]);
+            int count = counts.getOrDefault(op, 0);
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                samples.put(op, values);
+            }
+            values[count] = latencyNanos;
+            counts.put(op, count + 1);
+        }
+
+        synchronized void skip() {
+            skipped++;
+        }
+
+        synchronized ReplayReport build(long elapsedNanos) {
+            Map<TraceOp, long[]> sorted = new EnumMap<>(TraceOp.class);
+            int total = 0;
+            for (Map.Entry<TraceOp, long[]> entry : samples.entrySet()) {
+                long[] values = Arrays.copyOf(entry.getValue(), counts.get(entry.getKey()));
+                Arrays.sort(values);
+                sorted.put(entry.getKey(), values);
+                total += values.length;
+            }
+            long[] all = new long[total];
+            int position = 0;
+            for (long[] values : sorted.values()) {
+                System.arraycopy(values, 0, all, position, values.length);
+                position += values.length;
+            }
+            Arrays.sort(all);
+            return new ReplayReport(sorted, all, elapsedNanos, skipped);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package nl.blitz.replay;
+
+/**
+ * How fast a trace is replayed relative to the original recording.
+ */
+public class ReplaySpeed {
+    private static final ReplaySpeed MAX = new ReplaySpeed(Double.POSITIVE_INFINITY);
+
+    private final double multiplier;
+
+    private ReplaySpeed(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    public static ReplaySpeed original() {
+        return new ReplaySpeed(1.0);
+    }
+
+    public static ReplaySpeed times(double multiplier) {
+        if (!(multiplier > 0)) {
+            throw new IllegalArgumentException("multiplier must be positive");
+        }
+        return new ReplaySpeed(multiplier);
+    }
+
+    /**
+     * Issues every call as soon as the previous call of its session has returned.
+     */
+    public static ReplaySpeed max() {
+        return MAX;
+    }
+
+    boolean isMax() {
+        return Double.isInfinite(multiplier);
+    }
+
+    long scale(long offsetNanos) {
+        return (long) (offsetNanos / multiplier);
+    }
+}
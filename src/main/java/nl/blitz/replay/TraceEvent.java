@@ -0,0 +1,61 @@
+package nl.blitz.replay;
+
+/**
+ * One recorded service call.
+ *
+ * Cart calls carry the session (one per recorded cart instance) they were made on.
+ * {@code first} and {@code second} hold the string arguments in call order, {@code amount}
+ * and {@code quantity} the numeric ones. For {@code REGISTER_USER} the password is not
+ * recorded: {@code quantity} holds its length, {@code amount} is 1 if it was accepted and
+ * {@code second} holds the verification token the original call returned.
+ */
+public class TraceEvent {
+    private final TraceOp op;
+    private final int session;
+    private final long offsetNanos;
+    private final String first;
+    private final String second;
+    private final double amount;
+    private final int quantity;
+
+    public TraceEvent(TraceOp op, int session, long offsetNanos, String first, String second, double amount, int quantity) {
+        this.op = op;
+        this.session = session;
+        this.offsetNanos = offsetNanos;
+        this.first = first;
+        this.second = second;
+        this.amount = amount;
+        this.quantity = quantity;
+    }
+
+    public TraceOp getOp() {
+        return op;
+    }
+
+    public int getSession() {
+        return session;
+    }
+
+    /**
+     * Time since the start of the recording.
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public String getFirst() {
+        return first;
+    }
+
+    public String getSecond() {
+        return second;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+}
@@ -0,0 +1,13 @@
+package nl.blitz.replay;
+
+/**
+ * Service calls captured in a traffic trace.
+ */
+public enum TraceOp {
+    ADD_ITEM,
+    APPLY_DISCOUNT,
+    CHECKOUT,
+    PROCESS_PAYMENT,
+    REGISTER_USER,
+    ACTIVATE_ACCOUNT
+}
@@ -0,0 +1,117 @@
+package nl.blitz.replay;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a trace written by {@link TraceWriter}, one event at a time.
+ */
+public class TraceReader implements Closeable {
+    private final DataInputStream in;
+    private final Instant start;
+    private final List<String> dictionary;
+    private long previousOffset;
+
+    public TraceReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if (this.in.readInt() != TraceWriter.MAGIC) {
+            throw new IOException("Not a traffic trace");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != TraceWriter.VERSION) {
+            throw new IOException("Unsupported trace version: " + version);
+        }
+        this.start = Instant.ofEpochMilli(this.in.readLong());
+        this.dictionary = new ArrayList<>();
+    }
+
+    /**
+     * Wall-clock time at which the recording started.
+     */
+    public Instant getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the next event, or null at the end of the trace.
+     */
+    public TraceEvent next() throws IOException {
+        int opCode = in.read();
+        if (opCode < 0) {
+            return null;
+        }
+        TraceOp op = TraceOp.values()[opCode];
+        int session = (int) readVarLong();
+        long zigzag = readVarLong();
+        long offset = previousOffset + ((zigzag >>> 1) ^ -(zigzag & 1));
+        previousOffset = offset;
+
+        switch (op) {
+            case ADD_ITEM: {
+                String product = readString();
+                double price = in.readDouble();
+                int quantity = (int) readVarLong();
+                return new TraceEvent(op, session, offset, product, null, price, quantity);
+            }
+            case APPLY_DISCOUNT:
+                return new TraceEvent(op, session, offset, readString(), null, 0, 0);
+            case PROCESS_PAYMENT: {
+                String method = readString();
+                double amount = in.readDouble();
+                return new TraceEvent(op, session, offset, method, null, amount, 0);
+            }
+            case REGISTER_USER: {
+                String email = readString();
+                String token = readString();
+                int passwordLength = (int) readVarLong();
+                boolean accepted = in.readBoolean();
+                return new TraceEvent(op, session, offset, email, token, accepted ? 1 : 0, passwordLength);
+            }
+            default: {
+                String first = readString();
+                String second = readString();
+                return new TraceEvent(op, session, offset, first, second, 0, 0);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readString() throws IOException {
+        long ref = readVarLong();
+        if (ref == 0) {
+            return null;
+        }
+        if (ref == 1) {
+            String value = in.readUTF();
+            dictionary.add(value);
+            return value;
+        }
+        return dictionary.get((int) (ref - 2));
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated trace record");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+}
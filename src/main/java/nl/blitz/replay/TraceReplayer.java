@@ -0,0 +1,180 @@
+package nl.blitz.replay;
+
+import nl.blitz.shoppingcart.ShoppingCartService;
+import nl.blitz.userregistration.RegistrationResult;
+import nl.blitz.userregistration.UserRegistrationService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Replays a recorded trace against any {@link ShoppingCartService} and
+ * {@link UserRegistrationService} implementation.
+ *
+ * Each recorded cart session is replayed on a fresh cart from the factory. Verification
+ * tokens issued during the replay differ from the recorded ones, so activations are
+ * rewritten to the token the replayed registration returned. When a {@link VirtualClock} is
+ * given it is moved to each call's recorded wall-clock time before the call, which makes
+ * token expiry behave exactly as in the recording regardless of replay speed. The clock
+ * must be the one configured on the registration service.
+ *
+ * Calls are issued at their recorded offset, scaled by the replay speed, and latency is measured
+ * from that scheduled time, so a slow service shows up as queueing delay rather than as a
+ * slower replay. Cart sessions and the registrations of different users overlap as they did in
+ * the recording: each runs on its own thread and only waits for its own previous call. With a
+ * virtual clock all calls run one at a time, since concurrent calls could not each see their
+ * own time.
+ */
+public class TraceReplayer {
+    private final Supplier<? extends ShoppingCartService> cartFactory;
+    private final UserRegistrationService registration;
+    private final VirtualClock clock;
+
+    public TraceReplayer(Supplier<? extends ShoppingCartService> cartFactory,
+                         UserRegistrationService registration, VirtualClock clock) {
+        this.cartFactory = cartFactory;
+        this.registration = registration;
+        this.clock = clock;
+    }
+
+    public ReplayReport replay(InputStream trace, ReplaySpeed speed) throws IOException {
+        Map<Integer, ShoppingCartService> carts = new ConcurrentHashMap<>();
+        Map<String, String> tokens = new ConcurrentHashMap<>();
+        // Last call of each cart session or registering user; the next one waits for it
+        Map<Object, CompletableFuture<Void>> lanes = new HashMap<>();
+        ReplayReport.Builder report = new ReplayReport.Builder();
+        ExecutorService threads = clock == null ? Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "trace-replayer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        Executor executor = threads != null ? threads : Runnable::run;
+
+        try (TraceReader reader = new TraceReader(trace)) {
+            long replayStart = System.nanoTime();
+            TraceEvent event;
+            while ((event = reader.next()) != null) {
+                if (!canReplay(event.getOp())) {
+                    report.skip();
+                    continue;
+                }
+                long scheduled = replayStart + speed.scale(event.getOffsetNanos());
+                if (!speed.isMax()) {
+                    waitUntil(scheduled);
+                }
+                TraceEvent call = event;
+                Instant recordedAt = reader.getStart().plusNanos(event.getOffsetNanos());
+                Object lane = lane(event);
+                CompletableFuture<Void> previous = lanes.getOrDefault(lane, CompletableFuture.completedFuture(null));
+                lanes.put(lane, previous.thenRunAsync(() -> {
+                    // At max speed there is no schedule, so latency is the call's own time
+                    long start = speed.isMax() ? System.nanoTime() : scheduled;
+                    if (clock != null) {
+                        clock.setInstant(recordedAt);
+                    }
+                    dispatch(call, carts, tokens);
+                    report.record(call.getOp(), System.nanoTime() - start);
+                }, executor));
+            }
+            try {
+                CompletableFuture.allOf(lanes.values().toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+            return report.build(System.nanoTime() - replayStart);
+        } finally {
+            if (threads != null) {
+                threads.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Calls in the same lane must run in trace order: a cart session's calls, or one user's
+     * registration and activation.
+     */
+    private static Object lane(TraceEvent event) {
+        if (event.getOp() == TraceOp.REGISTER_USER || event.getOp() == TraceOp.ACTIVATE_ACCOUNT) {
+            return event.getFirst() == null ? "" : event.getFirst().toLowerCase(Locale.ROOT);
+        }
+        return event.getSession();
+    }
+
+    private boolean canReplay(TraceOp op) {
+        if (op == TraceOp.REGISTER_USER || op == TraceOp.ACTIVATE_ACCOUNT) {
+            return registration != null;
+        }
+        return cartFactory != null;
+    }
+
+    private void dispatch(TraceEvent event, Map<Integer, ShoppingCartService> carts, Map<String, String> tokens) {
+        switch (event.getOp()) {
+            case ADD_ITEM:
+                cart(carts, event).addItem(event.getFirst(), event.getAmount(), event.getQuantity());
+                break;
+            case APPLY_DISCOUNT:
+                cart(carts, event).applyDiscount(event.getFirst());
+                break;
+            case CHECKOUT:
+                cart(carts, event).checkout(event.getFirst(), event.getSecond());
+                break;
+            case PROCESS_PAYMENT:
+                cart(carts, event).processPayment(event.getFirst(), event.getAmount());
+                break;
+            case REGISTER_USER:
+                RegistrationResult result = registration.registerUser(event.getFirst(),
+                        syntheticPassword(event.getQuantity(), event.getAmount() != 0));
+                if (event.getSecond() != null && result.getVerificationToken() != null) {
+                    tokens.put(event.getSecond(), result.getVerificationToken());
+                }
+                break;
+            case ACTIVATE_ACCOUNT:
+                String token = tokens.getOrDefault(event.getSecond(), event.getSecond());
+                registration.activateAccount(event.getFirst(), token);
+                break;
+            default:
+                throw new IllegalStateException("Unknown trace op: " + event.getOp());
+        }
+    }
+
+    private ShoppingCartService cart(Map<Integer, ShoppingCartService> carts, TraceEvent event) {
+        return carts.computeIfAbsent(event.getSession(), session -> cartFactory.get());
+    }
+
+    /**
+     * Builds a password of the recorded length that passes (or fails) validation like the
+     * original did.
+     */
+    static String syntheticPassword(int length, boolean accepted) {
+        StringBuilder password = new StringBuilder(length);
+        if (accepted) {
+            password.append("Rp1");
+        }
+        while (password.length() < length) {
+            password.append('x');
+        }
+        return password.toString();
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
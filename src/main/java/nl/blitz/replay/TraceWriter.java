@@ -0,0 +1,127 @@
+package nl.blitz.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Writes a compact binary traffic trace.
+ *
+ * Layout: a header with the magic number, format version and the wall-clock start of the
+ * recording, followed by one record per call. A record is the op code, a varint session,
+ * the zigzag varint difference to the previous record's offset and the op's arguments.
+ * Strings are dictionary-encoded, so repeated product names, discount codes and emails cost
+ * one varint after their first occurrence.
+ */
+public class TraceWriter implements Closeable {
+    static final int MAGIC = 0x42545243;
+    static final int VERSION = 1;
+
+    private final DataOutputStream out;
+    private final LongSupplier nanoTime;
+    private final long startNanos;
+    private final Map<String, Integer> dictionary;
+    private final AtomicInteger sessions;
+    private long previousOffset;
+
+    public TraceWriter(OutputStream out) throws IOException {
+        this(out, Clock.systemUTC(), System::nanoTime);
+    }
+
+    TraceWriter(OutputStream out, Clock wallClock, LongSupplier nanoTime) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.nanoTime = nanoTime;
+        this.startNanos = nanoTime.getAsLong();
+        this.dictionary = new HashMap<>();
+        this.sessions = new AtomicInteger();
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeLong(wallClock.millis());
+    }
+
+    /**
+     * Allocates the session ID for a newly recorded cart.
+     */
+    public int newSession() {
+        return sessions.incrementAndGet();
+    }
+
+    /**
+     * Nanoseconds since the start of the recording.
+     */
+    public long offset() {
+        return nanoTime.getAsLong() - startNanos;
+    }
+
+    public synchronized void write(TraceEvent event) {
+        try {
+            out.writeByte(event.getOp().ordinal());
+            writeVarLong(event.getSession());
+            long delta = event.getOffsetNanos() - previousOffset;
+            writeVarLong((delta << 1) ^ (delta >> 63));
+            previousOffset = event.getOffsetNanos();
+
+            switch (event.getOp()) {
+                case ADD_ITEM:
+                    writeString(event.getFirst());
+                    out.writeDouble(event.getAmount());
+                    writeVarLong(event.getQuantity());
+                    break;
+                case APPLY_DISCOUNT:
+                    writeString(event.getFirst());
+                    break;
+                case PROCESS_PAYMENT:
+                    writeString(event.getFirst());
+                    out.writeDouble(event.getAmount());
+                    break;
+                case REGISTER_USER:
+                    writeString(event.getFirst());
+                    writeString(event.getSecond());
+                    writeVarLong(event.getQuantity());
+                    out.writeBoolean(event.getAmount() != 0);
+                    break;
+                default:
+                    writeString(event.getFirst());
+                    writeString(event.getSecond());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarLong(index + 2);
+            return;
+        }
+        dictionary.put(value, dictionary.size());
+        writeVarLong(1);
+        out.writeUTF(value);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,42 @@
+package nl.blitz.replay;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Clock whose time only moves when it is set, so time-dependent behaviour such as
+ * verification token expiry is reproducible during a replay.
+ */
+public class VirtualClock extends Clock {
+    private final ZoneId zone;
+    private volatile Instant instant;
+
+    public VirtualClock(Instant start) {
+        this(start, ZoneId.systemDefault());
+    }
+
+    public VirtualClock(Instant start, ZoneId zone) {
+        this.instant = start;
+        this.zone = zone;
+    }
+
+    public void setInstant(Instant instant) {
+        this.instant = instant;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new VirtualClock(instant, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+}
@@ -0,0 +1,82 @@
+package nl.blitz.shoppingcart;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * {@link AsyncShoppingCartService} on top of a {@link ShoppingCart}, sharing its items,
+ * discount, order ID and last payment result. Payments go through the cart's non-blocking
+ * {@link PaymentGateway} and email delivery is scheduled rather than slept.
+ *
+ * Cancelling the future returned by {@link #checkout} only skips the confirmation email if
+ * the payment has not completed yet. The charge has already been handed to the gateway by
+ * then and runs to completion; its result still becomes the cart's last payment result, and
+ * stock reservations and order history are settled as for any other checkout.
+ */
+public class AsyncShoppingCart implements AsyncShoppingCartService {
+    private static final Logger logger = Logger.getLogger(AsyncShoppingCart.class.getName());
+    private static final Executor EMAIL_DELAY =
+            CompletableFuture.delayedExecutor(ShoppingCart.EMAIL_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
+    private final ShoppingCart cart;
+
+    public AsyncShoppingCart(ShoppingCart cart) {
+        this.cart = cart;
+    }
+
+    @Override
+    public CompletableFuture<Void> checkout(String customerEmail, String paymentMethod) {
+        return checkout(customerEmail, paymentMethod, null);
+    }
+
+    /**
+     * @param instrumentId the card or account charged, used for per-instrument velocity checks;
+     *                     may be null
+     */
+    public CompletableFuture<Void> checkout(String customerEmail, String paymentMethod, String instrumentId) {
+        CompletableFuture<Void> checkout = new CompletableFuture<>();
+        String orderId = cart.generateOrderId();
+        CartSnapshot snapshot = cart.getSnapshot();
+        double total = cart.calculateTotal(snapshot);
+
+        CompletableFuture<PaymentResult> charge = cart.reserveStock(snapshot)
+                ? cart.processPaymentAsync(paymentMethod, instrumentId, total, customerEmail)
+                : CompletableFuture.completedFuture(cart.getLastPaymentResult());
+        // Settle and record on the charge itself: once issued it completes whether or not the
+        // caller still waits, and a paid order must not leave its reservation to expire
+        CompletableFuture<PaymentResult> settled = charge
+                .thenCompose(result -> cart.settleReservations(result, total))
+                .thenApply(result -> {
+                    cart.recordOrder(snapshot, result);
+                    return result;
+                });
+        settled.thenCompose(result -> checkout.isDone()
+                        ? CompletableFuture.<Void>completedFuture(null)
+                        : sendOrderConfirmationEmail(customerEmail))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        checkout.completeExceptionally(error);
+                    } else if (checkout.complete(null)) {
+                        logger.info("Checkout completed for order: " + orderId);
+                    }
+                });
+        return checkout;
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> processPayment(String paymentMethod, double amount) {
+        return cart.processPaymentAsync(paymentMethod, amount);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendOrderConfirmationEmail(String customerEmail) {
+        cart.prepareOrderConfirmationEmail(customerEmail);
+        return CompletableFuture.runAsync(() -> cart.orderConfirmationEmailSent(customerEmail), EMAIL_DELAY);
+    }
+
+    public ShoppingCart getCart() {
+        return cart;
+    }
+}
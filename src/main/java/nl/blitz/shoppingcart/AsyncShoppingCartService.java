@@ -0,0 +1,19 @@
+package nl.blitz.shoppingcart;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking companion to {@link ShoppingCartService} for callers on an asynchronous
+ * stack. Cart management and price calculations stay on the synchronous service; the
+ * operations that wait on external systems return futures instead.
+ */
+public interface AsyncShoppingCartService {
+    // Order processing
+    CompletableFuture<Void> checkout(String customerEmail, String paymentMethod);
+    
+    // Payment
+    CompletableFuture<PaymentResult> processPayment(String paymentMethod, double amount);
+    
+    // Email
+    CompletableFuture<Void> sendOrderConfirmationEmail(String customerEmail);
+}
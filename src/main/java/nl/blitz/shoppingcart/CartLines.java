@@ -0,0 +1,55 @@
+package nl.blitz.shoppingcart;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays view of the cart lines: unit prices and quantities are kept in parallel
+ * primitive arrays so pricing can run over them without touching {@link CartItem} objects.
+ *
+ * Instances are immutable views of the first {@code size} slots. Appending writes the slot
+ * just past this view and returns a new view over the same arrays, so every version shares
+ * its prefix with the next. This is only safe if appends are made on the latest version by
+ * one writer at a time, which {@link ShoppingCart} guarantees with its write lock.
+ */
+final class CartLines {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final double[] prices;
+    private final int[] quantities;
+    private final int size;
+
+    private CartLines(double[] prices, int[] quantities, int size) {
+        this.prices = prices;
+        this.quantities = quantities;
+        this.size = size;
+    }
+
+    static CartLines empty() {
+        return new CartLines(new double[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], 0);
+    }
+
+    CartLines append(double price, int quantity) {
+        double[] newPrices = prices;
+        int[] newQuantities = quantities;
+        if (size == prices.length) {
+            int capacity = prices.length * 2;
+            newPrices = Arrays.copyOf(prices, capacity);
+            newQuantities = Arrays.copyOf(quantities, capacity);
+        }
+        newPrices[size] = price;
+        newQuantities[size] = quantity;
+        return new CartLines(newPrices, newQuantities, size + 1);
+    }
+
+    double[] prices() {
+        return prices;
+    }
+
+    int[] quantities() {
+        return quantities;
+    }
+
+    int size() {
+        return size;
+    }
+}
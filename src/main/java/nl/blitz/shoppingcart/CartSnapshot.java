@@ -0,0 +1,41 @@
+package nl.blitz.shoppingcart;
+
+import java.util.List;
+
+/**
+ * Immutable version of a cart's contents. Taking a snapshot is O(1) and reading it needs no
+ * locks; everything derived from one snapshot (rendering, pricing, the confirmation email)
+ * sees the same items even while other threads keep adding to the cart.
+ */
+public final class CartSnapshot {
+    private final PersistentVector<CartItem> items;
+    private final CartLines lines;
+
+    private CartSnapshot(PersistentVector<CartItem> items, CartLines lines) {
+        this.items = items;
+        this.lines = lines;
+    }
+
+    static CartSnapshot empty() {
+        return new CartSnapshot(PersistentVector.empty(), CartLines.empty());
+    }
+
+    CartSnapshot withItem(CartItem item) {
+        return new CartSnapshot(items.append(item), lines.append(item.getPrice(), item.getQuantity()));
+    }
+
+    /**
+     * Unmodifiable view of the items in this version.
+     */
+    public List<CartItem> getItems() {
+        return items.asList();
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    CartLines lines() {
+        return lines;
+    }
+}
@@ -0,0 +1,85 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free circuit breaker.
+ *
+ * After {@code failureThreshold} consecutive failures the breaker opens and rejects calls
+ * without touching the gateway. Once {@code openDuration} has passed a single probe call is
+ * let through (half-open); its outcome closes the breaker again or re-opens it.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final LongSupplier clock;
+    private final AtomicInteger state;
+    private final AtomicInteger consecutiveFailures;
+    private volatile long openedAt;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.clock = clock;
+        this.state = new AtomicInteger(CLOSED);
+        this.consecutiveFailures = new AtomicInteger();
+    }
+
+    public boolean allowRequest() {
+        int current = state.get();
+        if (current == CLOSED) {
+            return true;
+        }
+        if (current == OPEN && clock.getAsLong() - openedAt >= openDurationNanos) {
+            return state.compareAndSet(OPEN, HALF_OPEN);
+        }
+        return false;
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() != CLOSED) {
+            state.set(CLOSED);
+        }
+    }
+
+    public void recordFailure() {
+        if (state.get() == HALF_OPEN) {
+            trip(HALF_OPEN);
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            trip(CLOSED);
+        }
+    }
+
+    public State getState() {
+        return State.values()[state.get()];
+    }
+
+    private void trip(int from) {
+        // Publish the open timestamp before the state so no reader sees OPEN with a stale time
+        if (state.get() == from) {
+            openedAt = clock.getAsLong();
+            if (state.compareAndSet(from, OPEN)) {
+                consecutiveFailures.set(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/**
+ * Scores payment attempts for velocity and unusual amounts before they are authorized.
+ *
+ * Attempts are counted per payment instrument and per customer email in
+ * {@link WindowedCountMinSketch}es, so memory stays flat however many cards and emails are
+ * seen. Amounts are compared with an exponentially weighted mean and variance of
+ * log(amount) over recently accepted payments. The score is the higher of the two velocity
+ * ratios (attempts in the window divided by the limit) plus a penalty for amounts more than
+ * three standard deviations above normal; attempts scoring above 1.0 should be declined.
+ */
+public class FraudScorer {
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(10);
+    public static final int DEFAULT_METHOD_LIMIT = 5;
+    public static final int DEFAULT_EMAIL_LIMIT = 10;
+    public static final int DEFAULT_EXPECTED_PAYMENTS = 50_000;
+
+    private static final int SLICES = 10;
+    private static final int DEPTH = 4;
+    // Weight of each accepted payment in the running amount statistics
+    private static final double AMOUNT_ALPHA = 0.01;
+    private static final int AMOUNT_WARMUP = 50;
+
+    private final WindowedCountMinSketch byMethod;
+    private final WindowedCountMinSketch byEmail;
+    private final int methodLimit;
+    private final int emailLimit;
+
+    private long amountSamples;
+    private double logAmountMean;
+    private double logAmountVariance;
+
+    public FraudScorer() {
+        this(DEFAULT_WINDOW, DEFAULT_METHOD_LIMIT, DEFAULT_EMAIL_LIMIT, DEFAULT_EXPECTED_PAYMENTS);
+    }
+
+    /**
+     * @param window           length of the sliding velocity window
+     * @param methodLimit      attempts allowed per payment instrument within the window
+     * @param emailLimit       attempts allowed per customer email within the window
+     * @param expectedPayments peak number of payments expected within one window; sizes the
+     *                         sketches so that collisions rarely inflate a count
+     */
+    public FraudScorer(Duration window, int methodLimit, int emailLimit, int expectedPayments) {
+        this(window, methodLimit, emailLimit, expectedPayments, System::nanoTime);
+    }
+
+    FraudScorer(Duration window, int methodLimit, int emailLimit, int expectedPayments, LongSupplier nanoTime) {
+        if (methodLimit < 1 || emailLimit < 1) {
+            throw new IllegalArgumentException("Limits must be at least 1");
+        }
+        // About four counters per event in a slice keeps collisions in all rows at once rare
+        int width = Integer.highestOneBit(Math.max(1024, 4 * expectedPayments / SLICES - 1)) * 2;
+        this.byMethod = new WindowedCountMinSketch(window.toNanos(), SLICES, DEPTH, width, nanoTime);
+        this.byEmail = new WindowedCountMinSketch(window.toNanos(), SLICES, DEPTH, width, nanoTime);
+        this.methodLimit = methodLimit;
+        this.emailLimit = emailLimit;
+    }
+
+    /**
+     * Records a payment attempt and returns its risk score. Declined attempts still count
+     * towards the velocity limits, but do not move the amount statistics.
+     *
+     * @param instrumentId identifies the instrument, e.g. a card fingerprint, or null if
+     *                     unknown; never a payment type such as "CREDIT_CARD", which every
+     *                     customer shares
+     * @param email        the customer's email, or null if unknown
+     */
+    public double score(String instrumentId, String email, double amount) {
+        double velocity = 0.0;
+        if (instrumentId != null) {
+            velocity = byMethod.incrementAndEstimate(instrumentId) / (double) methodLimit;
+        }
+        if (email != null) {
+            int attempts = byEmail.incrementAndEstimate(email.toLowerCase(Locale.ROOT));
+            velocity = Math.max(velocity, attempts / (double) emailLimit);
+        }
+        double score = velocity + amountPenalty(amount);
+        if (!isDeclined(score)) {
+            recordAmount(amount);
+        }
+        return score;
+    }
+
+    public boolean isDeclined(double score) {
+        return score > 1.0;
+    }
+
+    private synchronized double amountPenalty(double amount) {
+        if (amountSamples < AMOUNT_WARMUP || amount <= 0) {
+            return 0.0;
+        }
+        double deviation = Math.sqrt(logAmountVariance);
+        if (deviation == 0) {
+            return 0.0;
+        }
+        double z = (Math.log(amount) - logAmountMean) / deviation;
+        return Math.max(0.0, z - 3.0) / 2.0;
+    }
+
+    private synchronized void recordAmount(double amount) {
+        if (amount <= 0) {
+            return;
+        }
+        double logAmount = Math.log(amount);
+        amountSamples++;
+        if (amountSamples == 1) {
+            logAmountMean = logAmount;
+            return;
+        }
+        // Plain Welford while warming up, exponentially weighted afterwards
+        double alpha = Math.max(AMOUNT_ALPHA, 1.0 / amountSamples);
+        double delta = logAmount - logAmountMean;
+        logAmountMean += alpha * delta;
+        logAmountVariance = (1 - alpha) * (logAmountVariance + alpha * delta * delta);
+    }
+}
@@ -0,0 +1,183 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Stock levels per SKU with time-limited reservations.
+ *
+ * Counts are kept in {@link StripedStock}, so carts buying the same hot SKU do not serialize
+ * on one lock or one counter. A reservation takes stock immediately and gives it back when it
+ * is released or expires; committing it makes the sale final. Expiry is lazy: reservations sit
+ * in striped delay queues and are reclaimed by a sweep that {@link #reserve} runs at most once
+ * per sweep interval, or by an explicit {@link #expireReservations()}, without a background
+ * thread.
+ *
+ * SKUs without a stock level are not tracked and can always be reserved.
+ */
+public class Inventory {
+    private static final Logger logger = Logger.getLogger(Inventory.class.getName());
+
+    public static final Duration DEFAULT_RESERVATION_TTL = Duration.ofMinutes(15);
+
+    private final Map<String, StripedStock> stock;
+    private final List<DelayQueue<Reservation>> pending;
+    private final AtomicLong nextSweepNanos;
+    private final long ttlNanos;
+    private final long sweepIntervalNanos;
+    private final int stripes;
+    private final LongSupplier nanoTime;
+
+    public Inventory() {
+        this(DEFAULT_RESERVATION_TTL);
+    }
+
+    public Inventory(Duration reservationTtl) {
+        this(reservationTtl, defaultStripes(), System::nanoTime);
+    }
+
+    Inventory(Duration reservationTtl, int stripes, LongSupplier nanoTime) {
+        this.stock = new ConcurrentHashMap<>();
+        this.pending = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            pending.add(new DelayQueue<>());
+        }
+        this.ttlNanos = reservationTtl.toNanos();
+        this.sweepIntervalNanos = Math.min(ttlNanos, Duration.ofSeconds(1).toNanos());
+        this.nextSweepNanos = new AtomicLong(nanoTime.getAsLong() + sweepIntervalNanos);
+        this.stripes = stripes;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Starts tracking {@code sku} with the given quantity on hand, replacing any previous level.
+     */
+    public void setStock(String sku, long quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Stock cannot be negative: " + quantity);
+        }
+        stock.put(sku, new StripedStock(stripes, quantity));
+    }
+
+    public void addStock(String sku, long quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Use reserve and commit to remove stock");
+        }
+        stock.computeIfAbsent(sku, key -> new StripedStock(stripes, 0)).give(quantity);
+    }
+
+    public boolean isTracked(String sku) {
+        return stock.containsKey(sku);
+    }
+
+    /**
+     * Returns the quantity that can still be reserved, or -1 if the SKU is not tracked.
+     */
+    public long getAvailable(String sku) {
+        StripedStock counter = stock.get(sku);
+        return counter == null ? -1 : counter.sum();
+    }
+
+    /**
+     * Reserves {@code quantity} units of {@code sku}.
+     *
+     * @return the reservation, or null if there is not enough stock
+     */
+    public Reservation reserve(String sku, long quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        long now = nanoTime.getAsLong();
+        long nextSweep = nextSweepNanos.get();
+        if (now - nextSweep >= 0 && nextSweepNanos.compareAndSet(nextSweep, now + sweepIntervalNanos)) {
+            expireReservations();
+        }
+        StripedStock counter = stock.get(sku);
+        if (counter != null && !counter.tryTake(quantity)) {
+            return null;
+        }
+        Reservation reservation = new Reservation(sku, quantity, now + ttlNanos, nanoTime);
+        if (counter != null) {
+            pending.get(ThreadLocalRandom.current().nextInt(pending.size())).add(reservation);
+        }
+        return reservation;
+    }
+
+    /**
+     * Replaces an active reservation with one for the same stock and a full TTL, without the
+     * stock becoming available to anyone else in between.
+     *
+     * @return the new reservation, or null if {@code reservation} was no longer active
+     */
+    public Reservation renew(Reservation reservation) {
+        // The old reservation stays queued and is skipped when its deadline comes
+        if (!reservation.transition(Reservation.State.ACTIVE, Reservation.State.RELEASED)) {
+            return null;
+        }
+        Reservation renewed = new Reservation(reservation.getSku(), reservation.getQuantity(),
+                nanoTime.getAsLong() + ttlNanos, nanoTime);
+        if (stock.containsKey(reservation.getSku())) {
+            pending.get(ThreadLocalRandom.current().nextInt(pending.size())).add(renewed);
+        }
+        return renewed;
+    }
+
+    /**
+     * Makes the sale final.
+     *
+     * @return false if the reservation was already released or expired
+     */
+    public boolean commit(Reservation reservation) {
+        // Committed reservations stay queued until their deadline and are skipped then
+        return reservation.transition(Reservation.State.ACTIVE, Reservation.State.COMMITTED);
+    }
+
+    /**
+     * Returns the reserved stock.
+     *
+     * @return false if the reservation was already committed, released or expired
+     */
+    public boolean release(Reservation reservation) {
+        if (!reservation.transition(Reservation.State.ACTIVE, Reservation.State.RELEASED)) {
+            return false;
+        }
+        StripedStock counter = stock.get(reservation.getSku());
+        if (counter != null) {
+            counter.give(reservation.getQuantity());
+        }
+        return true;
+    }
+
+    /**
+     * Releases every reservation whose time is up.
+     *
+     * @return the number of reservations that expired
+     */
+    public int expireReservations() {
+        int expired = 0;
+        for (DelayQueue<Reservation> queue : pending) {
+            Reservation reservation;
+            while ((reservation = queue.poll()) != null) {
+                if (release(reservation)) {
+                    expired++;
+                }
+            }
+        }
+        if (expired > 0) {
+            logger.info("Expired " + expired + " abandoned reservations");
+        }
+        return expired;
+    }
+
+    private static int defaultStripes() {
+        return Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) * 2;
+    }
+}
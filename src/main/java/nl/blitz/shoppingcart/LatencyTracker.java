@@ -0,0 +1,50 @@
+package nl.blitz.shoppingcart;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the most recent latency samples in a fixed ring buffer and serves percentiles from a
+ * snapshot that is refreshed every {@code RECOMPUTE_INTERVAL} samples, so reading a
+ * percentile on the hot path is a volatile read.
+ */
+class LatencyTracker {
+    private static final int CAPACITY = 1024;
+    private static final int RECOMPUTE_INTERVAL = 64;
+    private static final int MIN_SAMPLES = 20;
+
+    private final AtomicLongArray samples = new AtomicLongArray(CAPACITY);
+    private final AtomicLong recorded = new AtomicLong();
+    private volatile long[] sorted = new long[0];
+
+    void record(long nanos) {
+        long n = recorded.getAndIncrement();
+        samples.set((int) (n % CAPACITY), nanos);
+        if ((n + 1) % RECOMPUTE_INTERVAL == 0 || n + 1 == MIN_SAMPLES) {
+            recompute(Math.min(n + 1, CAPACITY));
+        }
+    }
+
+    /**
+     * Returns the given percentile in nanoseconds, or {@code fallback} while there are too
+     * few samples to be meaningful.
+     */
+    long percentile(double p, long fallback) {
+        long[] snapshot = sorted;
+        if (snapshot.length < MIN_SAMPLES) {
+            return fallback;
+        }
+        int index = (int) Math.min(snapshot.length - 1, Math.ceil(p * snapshot.length) - 1);
+        return snapshot[Math.max(0, index)];
+    }
+
+    private void recompute(long count) {
+        long[] copy = new long[(int) count];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = samples.get(i);
+        }
+        Arrays.sort(copy);
+        sorted = copy;
+    }
+}
@@ -0,0 +1,305 @@
+package nl.blitz.shoppingcart;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only history of completed orders.
+ *
+ * Orders are stored column by column in segments of {@code segmentSize} orders, with product
+ * names and discount code sets dictionary-encoded. When a spill directory is configured, every
+ * full segment is written to its own file and memory-mapped, so old orders no longer occupy
+ * heap. Spill files are working storage, not a durable log: the store always starts empty and
+ * deletes them on {@link #close()}.
+ *
+ * Revenue per period, product sales and discount code usage are maintained incrementally on
+ * every append, so reporting queries cost O(periods) or O(products) and never rescan orders.
+ */
+public class OrderHistoryStore implements Closeable {
+    private static final Logger logger = Logger.getLogger(OrderHistoryStore.class.getName());
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4096;
+
+    private final Path spillDirectory;
+    private final int segmentSize;
+    private final long periodMillis;
+    private final Clock clock;
+
+    private final List<OrderSegment> segments;
+    private final List<Path> spillFiles;
+    private OrderSegment.Heap active;
+    private long size;
+
+    private final Map<String, Integer> productIds;
+    private final List<String> productNames;
+    private final Map<List<String>, Integer> codeSetIds;
+    private final List<List<String>> codeSets;
+
+    private final TreeMap<Long, PeriodTotals> periods;
+    private long[] unitsSold;
+    private double[] productRevenue;
+    private final Map<String, Long> discountCodeUsage;
+    private long discountedOrders;
+    private double totalDiscount;
+
+    /**
+     * Keeps all orders in memory and reports revenue per day.
+     */
+    public OrderHistoryStore() {
+        this(null, DEFAULT_SEGMENT_SIZE, Duration.ofDays(1), Clock.systemUTC());
+    }
+
+    /**
+     * @param spillDirectory directory for the memory-mapped segment files, or null to keep all
+     *                       orders in memory
+     * @param segmentSize    orders per segment
+     * @param period         length of the reporting periods, aligned to the epoch
+     */
+    public OrderHistoryStore(Path spillDirectory, int segmentSize, Duration period) throws IOException {
+        this(spillDirectory, segmentSize, period, Clock.systemUTC());
+        if (spillDirectory != null) {
+            Files.createDirectories(spillDirectory);
+        }
+    }
+
+    OrderHistoryStore(Path spillDirectory, int segmentSize, Duration period, Clock clock) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("segmentSize must be at least 1");
+        }
+        if (period.toMillis() < 1) {
+            throw new IllegalArgumentException("period must be at least one millisecond");
+        }
+        this.spillDirectory = spillDirectory;
+        this.segmentSize = segmentSize;
+        this.periodMillis = period.toMillis();
+        this.clock = clock;
+        this.segments = new ArrayList<>();
+        this.spillFiles = new ArrayList<>();
+        this.active = new OrderSegment.Heap();
+        this.segments.add(active);
+        this.productIds = new HashMap<>();
+        this.productNames = new ArrayList<>();
+        this.codeSetIds = new HashMap<>();
+        this.codeSets = new ArrayList<>();
+        this.periods = new TreeMap<>();
+        this.unitsSold = new long[64];
+        this.productRevenue = new double[64];
+        this.discountCodeUsage = new LinkedHashMap<>();
+    }
+
+    public synchronized void append(String orderId, List<CartItem> items, double subtotal, double discount,
+                                    List<String> discountCodes, String transactionId) {
+        long timestamp = clock.millis();
+        for (CartItem item : items) {
+            int productId = productId(item.getProductName());
+            active.appendLine(productId, item.getPrice(), item.getQuantity());
+            unitsSold[productId] += item.getQuantity();
+            productRevenue[productId] += item.getPrice() * item.getQuantity();
+        }
+        int codesId = discountCodes.isEmpty() ? -1 : codeSetId(discountCodes);
+        active.appendOrder(orderId, timestamp, subtotal, discount, codesId, transactionId);
+        size++;
+
+        long periodStart = Math.floorDiv(timestamp, periodMillis) * periodMillis;
+        periods.computeIfAbsent(periodStart, start -> new PeriodTotals()).add(subtotal - discount, discount);
+        for (String code : discountCodes) {
+            discountCodeUsage.merge(code, 1L, Long::sum);
+        }
+        if (discount > 0) {
+            discountedOrders++;
+            totalDiscount += discount;
+        }
+
+        if (active.size() == segmentSize) {
+            sealActiveSegment();
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized OrderRecord getOrder(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Order: " + index + ", size: " + size);
+        }
+        OrderSegment segment = segments.get((int) (index / segmentSize));
+        int order = (int) (index % segmentSize);
+
+        int lineEnd = segment.lineStart(order + 1);
+        List<CartItem> items = new ArrayList<>();
+        for (int line = segment.lineStart(order); line < lineEnd; line++) {
+            items.add(new CartItem(productNames.get(segment.productId(line)),
+                    segment.price(line), segment.quantity(line)));
+        }
+        int codesId = segment.codesId(order);
+        return new OrderRecord(segment.orderId(order), Instant.ofEpochMilli(segment.timestamp(order)),
+                items, segment.subtotal(order), segment.discount(order),
+                codesId < 0 ? List.of() : codeSets.get(codesId), segment.transactionId(order));
+    }
+
+    /**
+     * Totals of the periods that start in {@code [from, to)}, oldest first.
+     */
+    public synchronized List<PeriodSummary> periods(Instant from, Instant to) {
+        List<PeriodSummary> summaries = new ArrayList<>();
+        periods.subMap(epochMillis(from), true, epochMillis(to), false).forEach((start, totals) ->
+                summaries.add(new PeriodSummary(Instant.ofEpochMilli(start),
+                        totals.orders, totals.revenue, totals.discount)));
+        return summaries;
+    }
+
+    /**
+     * Revenue after discounts of the periods that start in {@code [from, to)}.
+     */
+    public synchronized double revenueBetween(Instant from, Instant to) {
+        double revenue = 0.0;
+        for (PeriodTotals totals : periods.subMap(epochMillis(from), true, epochMillis(to), false).values()) {
+            revenue += totals.revenue;
+        }
+        return revenue;
+    }
+
+    /**
+     * The {@code k} products with the most units sold, best-selling first.
+     */
+    public synchronized List<ProductSales> topProducts(int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        Comparator<Integer> byUnits = Comparator.<Integer>comparingLong(id -> unitsSold[id])
+                .thenComparing(id -> productNames.get(id), Comparator.reverseOrder());
+        // Min-heap of the best k seen so far
+        PriorityQueue<Integer> best = new PriorityQueue<>(k + 1, byUnits);
+        for (int id = 0; id < productNames.size(); id++) {
+            best.add(id);
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+        List<ProductSales> top = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int id = best.poll();
+            top.add(0, new ProductSales(productNames.get(id), unitsSold[id], productRevenue[id]));
+        }
+        return top;
+    }
+
+    /**
+     * Number of orders each discount code was applied to.
+     */
+    public synchronized Map<String, Long> getDiscountCodeUsage() {
+        return new LinkedHashMap<>(discountCodeUsage);
+    }
+
+    public synchronized long getDiscountedOrderCount() {
+        return discountedOrders;
+    }
+
+    public synchronized double getTotalDiscount() {
+        return totalDiscount;
+    }
+
+    synchronized int getSpilledSegmentCount() {
+        return spillFiles.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        // Mappings are only released once garbage collected, and some platforms refuse to
+        // delete a mapped file; such files are left behind
+        for (Path file : spillFiles) {
+            delete(file);
+        }
+        spillFiles.clear();
+    }
+
+    private void sealActiveSegment() {
+        if (spillDirectory != null) {
+            Path file = null;
+            try {
+                // A fresh name per spill, so files left behind by a crashed run or another store
+                // sharing the directory never get in the way
+                file = Files.createTempFile(spillDirectory, "orders-", ".seg");
+                segments.set(segments.size() - 1, active.spill(file));
+                spillFiles.add(file);
+            } catch (IOException e) {
+                // Keep the segment on the heap; the history stays complete, just less compact
+                logger.log(Level.WARNING, "Could not spill order segment to " + spillDirectory, e);
+                if (file != null) {
+                    delete(file);
+                }
+            }
+        }
+        active = new OrderSegment.Heap();
+        segments.add(active);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete order segment " + file, e);
+        }
+    }
+
+    private int productId(String productName) {
+        Integer id = productIds.get(productName);
+        if (id == null) {
+            id = productNames.size();
+            productIds.put(productName, id);
+            productNames.add(productName);
+            if (id == unitsSold.length) {
+                unitsSold = Arrays.copyOf(unitsSold, id * 2);
+                productRevenue = Arrays.copyOf(productRevenue, id * 2);
+            }
+        }
+        return id;
+    }
+
+    private int codeSetId(List<String> discountCodes) {
+        return codeSetIds.computeIfAbsent(List.copyOf(discountCodes), codes -> {
+            codeSets.add(codes);
+            return codeSets.size() - 1;
+        });
+    }
+
+    // Saturates instead of overflowing, so Instant.MIN and Instant.MAX work as open bounds
+    private static long epochMillis(Instant instant) {
+        if (instant.isBefore(Instant.ofEpochMilli(Long.MIN_VALUE))) {
+            return Long.MIN_VALUE;
+        }
+        if (instant.isAfter(Instant.ofEpochMilli(Long.MAX_VALUE))) {
+            return Long.MAX_VALUE;
+        }
+        return instant.toEpochMilli();
+    }
+
+    private static final class PeriodTotals {
+        private long orders;
+        private double revenue;
+        private double discount;
+
+        private void add(double orderRevenue, double orderDiscount) {
+            orders++;
+            revenue += orderRevenue;
+            discount += orderDiscount;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A completed order as read back from the {@link OrderHistoryStore}.
+ */
+public class OrderRecord {
+    private final String orderId;
+    private final Instant timestamp;
+    private final List<CartItem> items;
+    private final double subtotal;
+    private final double discount;
+    private final List<String> discountCodes;
+    private final String transactionId;
+
+    OrderRecord(String orderId, Instant timestamp, List<CartItem> items, double subtotal,
+                double discount, List<String> discountCodes, String transactionId) {
+        this.orderId = orderId;
+        this.timestamp = timestamp;
+        this.items = items;
+        this.subtotal = subtotal;
+        this.discount = discount;
+        this.discountCodes = discountCodes;
+        this.transactionId = transactionId;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public List<CartItem> getItems() {
+        return items;
+    }
+
+    public double getSubtotal() {
+        return subtotal;
+    }
+
+    public double getDiscount() {
+        return discount;
+    }
+
+    public double getTotal() {
+        return subtotal - discount;
+    }
+
+    public List<String> getDiscountCodes() {
+        return discountCodes;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+}
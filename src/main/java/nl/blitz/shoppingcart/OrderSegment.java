@@ -0,0 +1,337 @@
+package nl.blitz.shoppingcart;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A run of orders stored column by column. Product names and discount code sets are
+ * dictionary ids owned by the {@link OrderHistoryStore}; line positions are relative to the
+ * segment.
+ */
+abstract class OrderSegment {
+    static final int MAGIC = 0x4f524453;
+    // Set on a string's offset when the string is null, so null and empty stay apart
+    private static final int NULL_STRING = Integer.MIN_VALUE;
+
+    abstract int size();
+
+    abstract int lineCount();
+
+    abstract String orderId(int order);
+
+    abstract long timestamp(int order);
+
+    abstract double subtotal(int order);
+
+    abstract double discount(int order);
+
+    abstract int codesId(int order);
+
+    abstract String transactionId(int order);
+
+    abstract int lineStart(int order);
+
+    abstract int productId(int line);
+
+    abstract double price(int line);
+
+    abstract int quantity(int line);
+
+    /**
+     * The segment that is being appended to. Columns are plain arrays that grow by doubling.
+     */
+    static final class Heap extends OrderSegment {
+        private int size;
+        private int lines;
+        private String[] orderIds = new String[16];
+        private long[] timestamps = new long[16];
+        private double[] subtotals = new double[16];
+        private double[] discounts = new double[16];
+        private int[] codesIds = new int[16];
+        private String[] transactionIds = new String[16];
+        private int[] lineStarts = new int[17];
+        private int[] productIds = new int[64];
+        private double[] prices = new double[64];
+        private int[] quantities = new int[64];
+
+        void appendOrder(String orderId, long timestamp, double subtotal, double discount,
+                         int codesId, String transactionId) {
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                orderIds = Arrays.copyOf(orderIds, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                subtotals = Arrays.copyOf(subtotals, capacity);
+                discounts = Arrays.copyOf(discounts, capacity);
+                codesIds = Arrays.copyOf(codesIds, capacity);
+                transactionIds = Arrays.copyOf(transactionIds, capacity);
+                lineStarts = Arrays.copyOf(lineStarts, capacity + 1);
+            }
+            orderIds[size] = orderId;
+            timestamps[size] = timestamp;
+            subtotals[size] = subtotal;
+            discounts[size] = discount;
+            codesIds[size] = codesId;
+            transactionIds[size] = transactionId;
+            size++;
+            // lineStarts[size - 1] was set when the previous order closed its lines
+            lineStarts[size] = lines;
+        }
+
+        /**
+         * Lines are appended before the order that owns them.
+         */
+        void appendLine(int productId, double price, int quantity) {
+            if (lines == productIds.length) {
+                int capacity = lines * 2;
+                productIds = Arrays.copyOf(productIds, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+            }
+            productIds[lines] = productId;
+            prices[lines] = price;
+            quantities[lines] = quantity;
+            lines++;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int lineCount() {
+            return lines;
+        }
+
+        @Override
+        String orderId(int order) {
+            return orderIds[order];
+        }
+
+        @Override
+        long timestamp(int order) {
+            return timestamps[order];
+        }
+
+        @Override
+        double subtotal(int order) {
+            return subtotals[order];
+        }
+
+        @Override
+        double discount(int order) {
+            return discounts[order];
+        }
+
+        @Override
+        int codesId(int order) {
+            return codesIds[order];
+        }
+
+        @Override
+        String transactionId(int order) {
+            return transactionIds[order];
+        }
+
+        @Override
+        int lineStart(int order) {
+            return lineStarts[order];
+        }
+
+        @Override
+        int productId(int line) {
+            return productIds[line];
+        }
+
+        @Override
+        double price(int line) {
+            return prices[line];
+        }
+
+        @Override
+        int quantity(int line) {
+            return quantities[line];
+        }
+
+        /**
+         * Writes the columns to {@code file}, replacing its contents, and maps it back read-only.
+         *
+         * Layout: magic, order count and line count, then the fixed-width order columns
+         * (timestamps, subtotals, discounts, code set ids, line starts), the line columns
+         * (product ids, prices, quantities) and finally the order and transaction IDs as
+         * an offset table into a UTF-8 blob. The offset of a null string has its sign bit set.
+         */
+        Mapped spill(Path file) throws IOException {
+            byte[][] strings = new byte[size * 2][];
+            int stringBytes = 0;
+            for (int i = 0; i < size; i++) {
+                strings[2 * i] = bytes(orderIds[i]);
+                strings[2 * i + 1] = bytes(transactionIds[i]);
+                stringBytes += strings[2 * i].length + strings[2 * i + 1].length;
+            }
+
+            Mapped.Layout layout = new Mapped.Layout(size, lines);
+            ByteBuffer buffer = ByteBuffer.allocate(layout.stringData + stringBytes);
+            buffer.putInt(MAGIC).putInt(size).putInt(lines);
+            for (int i = 0; i < size; i++) {
+                buffer.putLong(layout.timestamps + i * 8, timestamps[i]);
+                buffer.putDouble(layout.subtotals + i * 8, subtotals[i]);
+                buffer.putDouble(layout.discounts + i * 8, discounts[i]);
+                buffer.putInt(layout.codesIds + i * 4, codesIds[i]);
+            }
+            for (int i = 0; i <= size; i++) {
+                buffer.putInt(layout.lineStarts + i * 4, lineStarts[i]);
+            }
+            for (int i = 0; i < lines; i++) {
+                buffer.putInt(layout.productIds + i * 4, productIds[i]);
+                buffer.putDouble(layout.prices + i * 8, prices[i]);
+                buffer.putInt(layout.quantities + i * 4, quantities[i]);
+            }
+            int offset = 0;
+            buffer.position(layout.stringData);
+            for (int i = 0; i < strings.length; i++) {
+                boolean isNull = (i % 2 == 0 ? orderIds[i / 2] : transactionIds[i / 2]) == null;
+                buffer.putInt(layout.stringOffsets + i * 4, isNull ? offset | NULL_STRING : offset);
+                buffer.put(strings[i]);
+                offset += strings[i].length;
+            }
+            buffer.putInt(layout.stringOffsets + strings.length * 4, offset);
+            buffer.flip();
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                return new Mapped(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), layout);
+            }
+        }
+
+        private static byte[] bytes(String value) {
+            return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * A full segment spilled to a memory-mapped file. Reads go straight to the mapping, so
+     * the segment's columns only occupy memory while the OS keeps their pages cached.
+     */
+    static final class Mapped extends OrderSegment {
+        private final MappedByteBuffer buffer;
+        private final Layout layout;
+
+        private Mapped(MappedByteBuffer buffer, Layout layout) {
+            this.buffer = buffer;
+            this.layout = layout;
+        }
+
+        @Override
+        int size() {
+            return layout.size;
+        }
+
+        @Override
+        int lineCount() {
+            return layout.lines;
+        }
+
+        @Override
+        String orderId(int order) {
+            return string(2 * order);
+        }
+
+        @Override
+        long timestamp(int order) {
+            return buffer.getLong(layout.timestamps + order * 8);
+        }
+
+        @Override
+        double subtotal(int order) {
+            return buffer.getDouble(layout.subtotals + order * 8);
+        }
+
+        @Override
+        double discount(int order) {
+            return buffer.getDouble(layout.discounts + order * 8);
+        }
+
+        @Override
+        int codesId(int order) {
+            return buffer.getInt(layout.codesIds + order * 4);
+        }
+
+        @Override
+        String transactionId(int order) {
+            return string(2 * order + 1);
+        }
+
+        @Override
+        int lineStart(int order) {
+            return buffer.getInt(layout.lineStarts + order * 4);
+        }
+
+        @Override
+        int productId(int line) {
+            return buffer.getInt(layout.productIds + line * 4);
+        }
+
+        @Override
+        double price(int line) {
+            return buffer.getDouble(layout.prices + line * 8);
+        }
+
+        @Override
+        int quantity(int line) {
+            return buffer.getInt(layout.quantities + line * 4);
+        }
+
+        private String string(int index) {
+            int start = buffer.getInt(layout.stringOffsets + index * 4);
+            if ((start & NULL_STRING) != 0) {
+                return null;
+            }
+            int end = buffer.getInt(layout.stringOffsets + index * 4 + 4) & ~NULL_STRING;
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(layout.stringData + start);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static final class Layout {
+            private final int size;
+            private final int lines;
+            private final int timestamps;
+            private final int subtotals;
+            private final int discounts;
+            private final int codesIds;
+            private final int lineStarts;
+            private final int productIds;
+            private final int prices;
+            private final int quantities;
+            private final int stringOffsets;
+            private final int stringData;
+
+            private Layout(int size, int lines) {
+                this.size = size;
+                this.lines = lines;
+                this.timestamps = 3 * Integer.BYTES;
+                this.subtotals = timestamps + size * 8;
+                this.discounts = subtotals + size * 8;
+                this.codesIds = discounts + size * 8;
+                this.lineStarts = codesIds + size * 4;
+                this.productIds = lineStarts + (size + 1) * 4;
+                this.prices = productIds + lines * 4;
+                this.quantities = prices + lines * 8;
+                this.stringOffsets = quantities + lines * 4;
+                this.stringData = stringOffsets + (2 * size + 1) * 4;
+            }
+        }
+    }
+}
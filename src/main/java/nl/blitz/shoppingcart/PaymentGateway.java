@@ -0,0 +1,20 @@
+package nl.blitz.shoppingcart;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Charges a payment method. Implementations must treat the transaction ID as an idempotency
+ * key: charging the same transaction twice (e.g. a hedged retry) must not charge the
+ * customer twice.
+ */
+public interface PaymentGateway {
+    CompletableFuture<PaymentResult> charge(String transactionId, String paymentMethod, double amount);
+
+    /**
+     * Refunds a successful charge in full. Gateways that cannot refund report a failed result.
+     */
+    default CompletableFuture<PaymentResult> refund(String transactionId, double amount) {
+        return CompletableFuture.completedFuture(
+                new PaymentResult(false, transactionId, "Refunds are not supported"));
+    }
+}
@@ -0,0 +1,39 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Instant;
+
+/**
+ * Order totals for one reporting period of the {@link OrderHistoryStore}.
+ */
+public class PeriodSummary {
+    private final Instant periodStart;
+    private final long orderCount;
+    private final double revenue;
+    private final double discount;
+
+    PeriodSummary(Instant periodStart, long orderCount, double revenue, double discount) {
+        this.periodStart = periodStart;
+        this.orderCount = orderCount;
+        this.revenue = revenue;
+        this.discount = discount;
+    }
+
+    public Instant getPeriodStart() {
+        return periodStart;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    /**
+     * Revenue after discounts.
+     */
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public double getDiscount() {
+        return discount;
+    }
+}
@@ -0,0 +1,114 @@
+package nl.blitz.shoppingcart;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sums {@code price * quantity} over parallel primitive arrays.
+ *
+ * The range is always split into the same tree of fixed-size blocks, each summed with
+ * Neumaier compensated summation, and partial results are combined in tree order. Because
+ * the tree depends only on the number of lines, the sequential and fork-join paths return
+ * bit-identical results regardless of how many cores take part.
+ */
+public class PricingEngine {
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 32_768;
+    static final int BLOCK_SIZE = 4_096;
+
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+
+    public PricingEngine() {
+        this(DEFAULT_PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public PricingEngine(int parallelThreshold, ForkJoinPool pool) {
+        this.parallelThreshold = parallelThreshold;
+        this.pool = pool;
+    }
+
+    public double subtotal(double[] prices, int[] quantities, int size) {
+        if (size == 0) {
+            return 0.0;
+        }
+        SubtotalTask task = new SubtotalTask(prices, quantities, 0, size, size >= parallelThreshold);
+        Partial result = task.parallel ? pool.invoke(task) : task.compute();
+        return result.value();
+    }
+
+    private static final class SubtotalTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] prices;
+        private final int[] quantities;
+        private final int from;
+        private final int to;
+        private final boolean parallel;
+
+        private SubtotalTask(double[] prices, int[] quantities, int from, int to, boolean parallel) {
+            this.prices = prices;
+            this.quantities = quantities;
+            this.from = from;
+            this.to = to;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= BLOCK_SIZE) {
+                return sumBlock();
+            }
+            int blocks = (to - from + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            int mid = from + (blocks / 2) * BLOCK_SIZE;
+            SubtotalTask left = new SubtotalTask(prices, quantities, from, mid, parallel);
+            SubtotalTask right = new SubtotalTask(prices, quantities, mid, to, parallel);
+            if (parallel) {
+                left.fork();
+                Partial rightResult = right.compute();
+                return left.join().combine(rightResult);
+            }
+            return left.compute().combine(right.compute());
+        }
+
+        private Partial sumBlock() {
+            double sum = 0.0;
+            double compensation = 0.0;
+            for (int i = from; i < to; i++) {
+                double line = prices[i] * quantities[i];
+                double t = sum + line;
+                if (Math.abs(sum) >= Math.abs(line)) {
+                    compensation += (sum - t) + line;
+                } else {
+                    compensation += (line - t) + sum;
+                }
+                sum = t;
+            }
+            return new Partial(sum, compensation);
+        }
+    }
+
+    private static final class Partial {
+        private final double sum;
+        private final double compensation;
+
+        private Partial(double sum, double compensation) {
+            this.sum = sum;
+            this.compensation = compensation;
+        }
+
+        private Partial combine(Partial other) {
+            double t = sum + other.sum;
+            double error;
+            if (Math.abs(sum) >= Math.abs(other.sum)) {
+                error = (sum - t) + other.sum;
+            } else {
+                error = (other.sum - t) + sum;
+            }
+            return new Partial(t, compensation + other.compensation + error);
+        }
+
+        private double value() {
+            return sum + compensation;
+        }
+    }
+}
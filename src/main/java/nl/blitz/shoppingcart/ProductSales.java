@@ -0,0 +1,28 @@
+package nl.blitz.shoppingcart;
+
+/**
+ * Running sales totals for one product in the {@link OrderHistoryStore}.
+ */
+public class ProductSales {
+    private final String productName;
+    private final long unitsSold;
+    private final double revenue;
+
+    ProductSales(String productName, long unitsSold, double revenue) {
+        this.productName = productName;
+        this.unitsSold = unitsSold;
+        this.revenue = revenue;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public long getUnitsSold() {
+        return unitsSold;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+}
@@ -0,0 +1,120 @@
+package nl.blitz.shoppingcart;
+
+import java.util.Arrays;
+
+/**
+ * Definition of a promotion rule, compiled into a {@link PromotionEngine}.
+ *
+ * A promotion without a code applies automatically, one with a code only once that code has
+ * been applied to the cart. Stackable promotions add up; of the non-stackable promotions
+ * that apply, only the single most valuable one is granted.
+ */
+public class Promotion {
+    public enum Type {
+        /** Percentage off the whole cart. */
+        CART_PERCENTAGE,
+        /** Percentage off every line of one product. */
+        PRODUCT_PERCENTAGE,
+        /** Fixed amount off once the subtotal reaches a threshold. */
+        MINIMUM_SPEND,
+        /** Percentage off the cart that grows with the subtotal. */
+        TIERED
+    }
+
+    private final String id;
+    private final String code;
+    private final Type type;
+    private final String productName;
+    private final double[] thresholds;
+    private final double[] values;
+    private final boolean stackable;
+
+    private Promotion(String id, String code, Type type, String productName,
+                      double[] thresholds, double[] values, boolean stackable) {
+        this.id = id;
+        this.code = code;
+        this.type = type;
+        this.productName = productName;
+        this.thresholds = thresholds;
+        this.values = values;
+        this.stackable = stackable;
+    }
+
+    public static Promotion cartPercentage(String id, String code, double percentage, boolean stackable) {
+        return new Promotion(id, code, Type.CART_PERCENTAGE, null,
+                new double[] {0.0}, new double[] {percentage}, stackable);
+    }
+
+    public static Promotion productPercentage(String id, String code, String productName, double percentage, boolean stackable) {
+        return new Promotion(id, code, Type.PRODUCT_PERCENTAGE, productName,
+                new double[] {0.0}, new double[] {percentage}, stackable);
+    }
+
+    public static Promotion minimumSpend(String id, String code, double minimumSubtotal, double amountOff, boolean stackable) {
+        return new Promotion(id, code, Type.MINIMUM_SPEND, null,
+                new double[] {minimumSubtotal}, new double[] {amountOff}, stackable);
+    }
+
+    /**
+     * @param thresholds  ascending subtotal thresholds at which each tier starts
+     * @param percentages the percentage off for each tier, non-decreasing
+     */
+    public static Promotion tiered(String id, String code, double[] thresholds, double[] percentages, boolean stackable) {
+        if (thresholds.length == 0 || thresholds.length != percentages.length) {
+            throw new IllegalArgumentException("Tiered promotion " + id + " needs one percentage per threshold");
+        }
+        for (int i = 1; i < thresholds.length; i++) {
+            if (thresholds[i] <= thresholds[i - 1] || percentages[i] < percentages[i - 1]) {
+                throw new IllegalArgumentException(
+                        "Tiered promotion " + id + " needs ascending thresholds and non-decreasing percentages");
+            }
+        }
+        return new Promotion(id, code, Type.TIERED, null,
+                thresholds.clone(), percentages.clone(), stackable);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public boolean isStackable() {
+        return stackable;
+    }
+
+    double[] thresholds() {
+        return thresholds;
+    }
+
+    double[] values() {
+        return values;
+    }
+
+    /**
+     * Discount this promotion grants on its own, given the cart subtotal and the total of
+     * the lines of its product. Used for the few code-gated promotions of a cart.
+     */
+    double amountFor(double subtotal, double productTotal) {
+        switch (type) {
+            case PRODUCT_PERCENTAGE:
+                return productTotal * values[0] / 100.0;
+            case MINIMUM_SPEND:
+                return subtotal >= thresholds[0] ? values[0] : 0.0;
+            default:
+                int tier = Arrays.binarySearch(thresholds, subtotal);
+                tier = tier >= 0 ? tier : -tier - 2;
+                return tier < 0 ? 0.0 : subtotal * values[tier] / 100.0;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package nl.blitz.shoppingcart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates a set of {@link Promotion}s against a cart, compiled once into indexes so that a
+ * pricing call only touches the rules that can apply.
+ *
+ * Automatic product rules are folded into one entry per product, holding the summed
+ * stackable percentage and the best non-stackable percentage. Automatic cart-wide rules
+ * (percentage, minimum spend and every tier of a tiered rule) become entries on a single
+ * threshold axis with prefix sums for the stackable rules and prefix maxima for the
+ * non-stackable ones, so all of them are resolved by one binary search on the subtotal.
+ * Code-gated rules are indexed by code and only evaluated for the codes applied to the cart.
+ */
+public class PromotionEngine {
+    private final int ruleCount;
+    private final Map<String, ProductRules> productRules;
+    private final Map<String, Promotion[]> promotionsByCode;
+    private final Set<String> stackableCodes;
+
+    // Threshold axis; every array below has one more slot than there are thresholds
+    private final double[] thresholds;
+    private final double[] stackablePercentage;
+    private final double[] stackableAmount;
+    private final double[] exclusivePercentage;
+    private final double[] exclusiveAmount;
+
+    public PromotionEngine(Collection<Promotion> promotions) {
+        this.ruleCount = promotions.size();
+        this.productRules = new HashMap<>();
+        this.promotionsByCode = new HashMap<>();
+        this.stackableCodes = new HashSet<>();
+
+        List<ThresholdEntry> entries = new ArrayList<>();
+        Map<String, List<Promotion>> byCode = new HashMap<>();
+        for (Promotion promotion : promotions) {
+            validate(promotion);
+            if (promotion.getCode() != null) {
+                byCode.computeIfAbsent(promotion.getCode(), code -> new ArrayList<>()).add(promotion);
+            } else if (promotion.getType() == Promotion.Type.PRODUCT_PERCENTAGE) {
+                productRules.computeIfAbsent(promotion.getProductName(), name -> new ProductRules())
+                        .add(promotion);
+            } else {
+                addThresholdEntries(promotion, entries);
+            }
+        }
+        byCode.forEach((code, list) -> {
+            promotionsByCode.put(code, list.toArray(new Promotion[0]));
+            if (list.stream().allMatch(Promotion::isStackable)) {
+                stackableCodes.add(code);
+            }
+        });
+
+        entries.sort(Comparator.comparingDouble(entry -> entry.threshold));
+        int n = entries.size();
+        this.thresholds = new double[n];
+        this.stackablePercentage = new double[n + 1];
+        this.stackableAmount = new double[n + 1];
+        this.exclusivePercentage = new double[n + 1];
+        this.exclusiveAmount = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            ThresholdEntry entry = entries.get(i);
+            thresholds[i] = entry.threshold;
+            stackablePercentage[i + 1] = stackablePercentage[i] + entry.stackablePercentage;
+            stackableAmount[i + 1] = stackableAmount[i] + entry.stackableAmount;
+            exclusivePercentage[i + 1] = Math.max(exclusivePercentage[i], entry.exclusivePercentage);
+            exclusiveAmount[i + 1] = Math.max(exclusiveAmount[i], entry.exclusiveAmount);
+        }
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public boolean isKnownCode(String code) {
+        return code != null && promotionsByCode.containsKey(code);
+    }
+
+    /**
+     * Whether every promotion behind the code is stackable. A code with any non-stackable
+     * promotion competes with the other such codes, and only one of them can apply.
+     */
+    public boolean isStackableCode(String code) {
+        return code != null && stackableCodes.contains(code);
+    }
+
+    /**
+     * Discount for the cart: the sum of all applicable stackable promotions plus the single
+     * most valuable applicable non-stackable promotion, never more than the subtotal.
+     */
+    public double discount(CartSnapshot cart, double subtotal, Collection<String> appliedCodes) {
+        if (subtotal <= 0) {
+            return 0.0;
+        }
+
+        // All automatic cart-wide rules at once: entries [0, applicable) have a threshold <= subtotal
+        int applicable = upperBound(thresholds, subtotal);
+        double stackable = subtotal * stackablePercentage[applicable] / 100.0 + stackableAmount[applicable];
+        double exclusive = Math.max(subtotal * exclusivePercentage[applicable] / 100.0, exclusiveAmount[applicable]);
+
+        Promotion[][] coded = codedPromotions(appliedCodes);
+        Map<String, Double> productTotals = null;
+        if (!productRules.isEmpty() || hasProductPromotion(coded)) {
+            productTotals = new HashMap<>();
+            for (CartItem item : cart.getItems()) {
+                double lineTotal = item.getPrice() * item.getQuantity();
+                ProductRules rules = productRules.get(item.getProductName());
+                if (rules != null) {
+                    // Percentages are linear, so stackable rules can be applied line by line
+                    stackable += lineTotal * rules.stackablePercentage / 100.0;
+                }
+                productTotals.merge(item.getProductName(), lineTotal, Double::sum);
+            }
+            for (Map.Entry<String, Double> entry : productTotals.entrySet()) {
+                ProductRules rules = productRules.get(entry.getKey());
+                if (rules != null) {
+                    exclusive = Math.max(exclusive, entry.getValue() * rules.exclusivePercentage / 100.0);
+                }
+            }
+        }
+
+        for (Promotion[] promotions : coded) {
+            for (Promotion promotion : promotions) {
+                double productTotal = productTotals == null || promotion.getProductName() == null
+                        ? 0.0
+                        : productTotals.getOrDefault(promotion.getProductName(), 0.0);
+                double amount = promotion.amountFor(subtotal, productTotal);
+                if (promotion.isStackable()) {
+                    stackable += amount;
+                } else {
+                    exclusive = Math.max(exclusive, amount);
+                }
+            }
+        }
+
+        return Math.min(subtotal, stackable + exclusive);
+    }
+
+    private Promotion[][] codedPromotions(Collection<String> appliedCodes) {
+        Promotion[][] coded = new Promotion[appliedCodes.size()][];
+        int count = 0;
+        for (String code : appliedCodes) {
+            Promotion[] promotions = promotionsByCode.get(code);
+            if (promotions != null) {
+                coded[count++] = promotions;
+            }
+        }
+        return count == coded.length ? coded : Arrays.copyOf(coded, count);
+    }
+
+    private static boolean hasProductPromotion(Promotion[][] coded) {
+        for (Promotion[] promotions : coded) {
+            for (Promotion promotion : promotions) {
+                if (promotion.getProductName() != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void addThresholdEntries(Promotion promotion, List<ThresholdEntry> entries) {
+        double[] tierThresholds = promotion.thresholds();
+        double[] values = promotion.values();
+        boolean fixedAmount = promotion.getType() == Promotion.Type.MINIMUM_SPEND;
+        for (int tier = 0; tier < tierThresholds.length; tier++) {
+            ThresholdEntry entry = new ThresholdEntry(tierThresholds[tier]);
+            if (fixedAmount && promotion.isStackable()) {
+                entry.stackableAmount = values[tier];
+            } else if (fixedAmount) {
+                entry.exclusiveAmount = values[tier];
+            } else if (promotion.isStackable()) {
+                // Reaching a higher tier replaces the lower tier's percentage
+                entry.stackablePercentage = values[tier] - (tier == 0 ? 0.0 : values[tier - 1]);
+            } else {
+                // Tiers are non-decreasing, so the prefix maximum picks the highest tier reached
+                entry.exclusivePercentage = values[tier];
+            }
+            entries.add(entry);
+        }
+    }
+
+    private static void validate(Promotion promotion) {
+        for (double value : promotion.values()) {
+            boolean percentage = promotion.getType() != Promotion.Type.MINIMUM_SPEND;
+            if (value < 0 || (percentage && value > 100)) {
+                throw new IllegalArgumentException("Invalid value " + value + " for promotion " + promotion.getId());
+            }
+        }
+        if (promotion.getType() == Promotion.Type.PRODUCT_PERCENTAGE && promotion.getProductName() == null) {
+            throw new IllegalArgumentException("Product promotion " + promotion.getId() + " needs a product name");
+        }
+    }
+
+    /**
+     * Number of entries in the sorted array that are {@code <= key}.
+     */
+    private static int upperBound(double[] sorted, double key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class ProductRules {
+        private double stackablePercentage;
+        private double exclusivePercentage;
+
+        private void add(Promotion promotion) {
+            double percentage = promotion.values()[0];
+            if (promotion.isStackable()) {
+                stackablePercentage += percentage;
+            } else {
+                exclusivePercentage = Math.max(exclusivePercentage, percentage);
+            }
+        }
+    }
+
+    private static final class ThresholdEntry {
+        private final double threshold;
+        private double stackablePercentage;
+        private double stackableAmount;
+        private double exclusivePercentage;
+        private double exclusiveAmount;
+
+        private ThresholdEntry(double threshold) {
+            this.threshold = threshold;
+        }
+    }
+}
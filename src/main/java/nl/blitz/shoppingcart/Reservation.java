@@ -0,0 +1,65 @@
+package nl.blitz.shoppingcart;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Stock held for a cart by the {@link Inventory} until it is committed by a paid checkout,
+ * released, or expires.
+ */
+public class Reservation implements Delayed {
+    public enum State {
+        ACTIVE,
+        COMMITTED,
+        RELEASED
+    }
+
+    private final String sku;
+    private final long quantity;
+    private final long deadlineNanos;
+    private final LongSupplier nanoTime;
+    private final AtomicReference<State> state;
+
+    Reservation(String sku, long quantity, long deadlineNanos, LongSupplier nanoTime) {
+        this.sku = sku;
+        this.quantity = quantity;
+        this.deadlineNanos = deadlineNanos;
+        this.nanoTime = nanoTime;
+        this.state = new AtomicReference<>(State.ACTIVE);
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isActive() {
+        return state.get() == State.ACTIVE;
+    }
+
+    boolean transition(State from, State to) {
+        return state.compareAndSet(from, to);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(deadlineNanos - nanoTime.getAsLong(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other instanceof Reservation) {
+            return Long.compare(deadlineNanos - ((Reservation) other).deadlineNanos, 0);
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
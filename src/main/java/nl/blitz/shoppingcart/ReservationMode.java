@@ -0,0 +1,11 @@
+package nl.blitz.shoppingcart;
+
+/**
+ * When a {@link ShoppingCart} reserves stock in its {@link Inventory}.
+ */
+public enum ReservationMode {
+    /** Reserve on addItem; items that are out of stock are not added. */
+    ON_ADD,
+    /** Reserve the whole cart at checkout; checkout fails if anything is out of stock. */
+    AT_CHECKOUT
+}
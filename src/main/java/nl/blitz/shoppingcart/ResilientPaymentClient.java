@@ -0,0 +1,154 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wraps a {@link PaymentGateway} with a per-call deadline, a hedged second attempt and a
+ * circuit breaker.
+ *
+ * If the first attempt has not completed after the gateway's recent p95 latency, the same
+ * transaction is sent again and whichever attempt answers first wins. Both attempts carry the
+ * same transaction ID, so the gateway can deduplicate them. Calls that miss the deadline or
+ * fail count against the circuit breaker; while it is open, charges fail fast without calling
+ * the gateway. A charge that succeeds only after its deadline has been reported as timed out is
+ * refunded, so the customer is never charged for an order that failed. Every outcome is
+ * reported as a {@link PaymentResult}, never as an exception.
+ *
+ * The breaker and latency statistics only work if calls to one gateway share one client.
+ */
+public class ResilientPaymentClient implements PaymentGateway {
+    private static final Logger logger = Logger.getLogger(ResilientPaymentClient.class.getName());
+
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(2);
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    private final PaymentGateway gateway;
+    private final Duration defaultDeadline;
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyTracker latencies;
+
+    public ResilientPaymentClient(PaymentGateway gateway) {
+        this(gateway, DEFAULT_DEADLINE, new CircuitBreaker(5, Duration.ofSeconds(10)));
+    }
+
+    public ResilientPaymentClient(PaymentGateway gateway, Duration defaultDeadline, CircuitBreaker circuitBreaker) {
+        this.gateway = gateway;
+        this.defaultDeadline = defaultDeadline;
+        this.circuitBreaker = circuitBreaker;
+        this.latencies = new LatencyTracker();
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> charge(String transactionId, String paymentMethod, double amount) {
+        return charge(transactionId, paymentMethod, amount, defaultDeadline);
+    }
+
+    public CompletableFuture<PaymentResult> charge(String transactionId, String paymentMethod, double amount, Duration deadline) {
+        if (!circuitBreaker.allowRequest()) {
+            return CompletableFuture.completedFuture(
+                    new PaymentResult(false, null, "Payment gateway unavailable"));
+        }
+
+        long deadlineNanos = deadline.toNanos();
+        long hedgeDelay = latencies.percentile(HEDGE_PERCENTILE, deadlineNanos / 2);
+        CompletableFuture<PaymentResult> first = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicBoolean voided = new AtomicBoolean();
+
+        attempt(transactionId, paymentMethod, amount, first, pending, voided);
+        if (hedgeDelay < deadlineNanos) {
+            CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.NANOSECONDS).execute(() -> {
+                if (!first.isDone() && pending.getAndIncrement() > 0) {
+                    logger.info("Hedging payment " + transactionId);
+                    attempt(transactionId, paymentMethod, amount, first, pending, voided);
+                }
+            });
+        }
+
+        return first
+                .orTimeout(deadlineNanos, TimeUnit.NANOSECONDS)
+                .handle((result, error) -> {
+                    if (error == null) {
+                        circuitBreaker.recordSuccess();
+                        return result;
+                    }
+                    circuitBreaker.recordFailure();
+                    if (error instanceof TimeoutException) {
+                        return new PaymentResult(false, null, "Payment timed out");
+                    }
+                    return new PaymentResult(false, null, "Payment failed: " + rootMessage(error));
+                });
+    }
+
+    /**
+     * Passes the refund straight to the gateway; refunds are rare and must not be hedged or
+     * refused by an open circuit.
+     */
+    @Override
+    public CompletableFuture<PaymentResult> refund(String transactionId, double amount) {
+        CompletableFuture<PaymentResult> call;
+        try {
+            call = gateway.refund(transactionId, amount);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        return call.handle((result, error) -> error == null ? result
+                : new PaymentResult(false, transactionId, "Refund failed: " + rootMessage(error)));
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Runs one attempt and completes {@code first} with the first answer from the gateway.
+     * Failed attempts only complete it exceptionally once no other attempt is outstanding, and
+     * a success arriving after {@code first} timed out is voided once per transaction.
+     */
+    private void attempt(String transactionId, String paymentMethod, double amount,
+                         CompletableFuture<PaymentResult> first, AtomicInteger pending, AtomicBoolean voided) {
+        long start = System.nanoTime();
+        CompletableFuture<PaymentResult> call;
+        try {
+            call = gateway.charge(transactionId, paymentMethod, amount);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((result, error) -> {
+            if (error == null) {
+                latencies.record(System.nanoTime() - start);
+                if (!first.complete(result) && first.isCompletedExceptionally() && result.isSuccess()
+                        && voided.compareAndSet(false, true)) {
+                    voidLateCharge(transactionId, amount);
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                first.completeExceptionally(error);
+            }
+        });
+    }
+
+    private void voidLateCharge(String transactionId, double amount) {
+        logger.warning("Payment " + transactionId + " succeeded after its deadline; refunding");
+        refund(transactionId, amount).thenAccept(result -> {
+            if (!result.isSuccess()) {
+                logger.log(Level.SEVERE, "Could not refund late payment " + transactionId + " of " + amount
+                        + ", reconcile manually: " + result.getMessage());
+            }
+        });
+    }
+
+    private static String rootMessage(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+}
@@ -1,24 +1,64 @@
 package nl.blitz.shoppingcart;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 public class ShoppingCart implements ShoppingCartService {
     private static final Logger logger = Logger.getLogger(ShoppingCart.class.getName());
     
-    private final List<CartItem> items;
+    private final Object writeLock = new Object();
+    private volatile CartSnapshot snapshot;
+    private final PricingEngine pricingEngine;
+    private final PaymentGateway paymentGateway;
     private final List<Discount> availableDiscounts;
-    private String appliedDiscountCode;
-    private String orderId;
-    private String emailSentTo;
-    private PaymentResult lastPaymentResult;
+    private volatile PromotionEngine promotionEngine;
+    private volatile OrderHistoryStore orderHistory;
+    private volatile Inventory inventory;
+    private volatile ReservationMode reservationMode;
+    private volatile FraudScorer fraudScorer;
+    private final List<Reservation> reservations = new ArrayList<>();
+    private volatile List<String> appliedDiscountCodes;
+    private volatile String orderId;
+    private volatile String emailSentTo;
+    private volatile PaymentResult lastPaymentResult;
+
+    static final long EMAIL_DELAY_MILLIS = 50;
+    // Shared by every cart built without a gateway, so its circuit breaker and hedging see all traffic
+    private static final PaymentGateway DEFAULT_GATEWAY = new ResilientPaymentClient(new SimulatedPaymentGateway());
+    // Well beyond the payment deadline, so a reservation renewed before charging outlives the charge
+    static final Duration MIN_RESERVATION_TIME_LEFT = Duration.ofSeconds(30);
 
     public ShoppingCart() {
-        this.items = new ArrayList<>();
+        this(new PricingEngine());
+    }
+
+    public ShoppingCart(PricingEngine pricingEngine) {
+        this(pricingEngine, DEFAULT_GATEWAY);
+    }
+
+    public ShoppingCart(PaymentGateway paymentGateway) {
+        this(new PricingEngine(), paymentGateway);
+    }
+
+    public ShoppingCart(PricingEngine pricingEngine, PaymentGateway paymentGateway) {
+        this.snapshot = CartSnapshot.empty();
+        this.pricingEngine = pricingEngine;
+        this.paymentGateway = paymentGateway;
         this.availableDiscounts = new ArrayList<>();
+        this.appliedDiscountCodes = List.of();
         initializeDiscounts();
+        this.promotionEngine = new PromotionEngine(availableDiscounts.stream()
+                .map(d -> Promotion.cartPercentage(d.getCode(), d.getCode(), d.getPercentage(), false))
+                .collect(Collectors.toList()));
     }
 
     private void initializeDiscounts() {
@@ -28,24 +68,84 @@ public class ShoppingCart implements ShoppingCartService {
     }
 
     public void addItem(String productName, double price, int quantity) {
-        items.add(new CartItem(productName, price, quantity));
+        CartItem item = new CartItem(productName, price, quantity);
+        Inventory stock = inventory;
+        Reservation reservation = null;
+        if (stock != null && reservationMode == ReservationMode.ON_ADD && quantity > 0) {
+            reservation = stock.reserve(productName, quantity);
+            if (reservation == null) {
+                logger.warning("Insufficient stock for: " + productName + " x" + quantity);
+                return;
+            }
+        }
+        synchronized (writeLock) {
+            snapshot = snapshot.withItem(item);
+            if (reservation != null) {
+                reservations.add(reservation);
+            }
+        }
         logger.info("Added item: " + productName + " x" + quantity);
     }
 
     public double calculateSubtotal() {
-        return items.stream()
-                .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                .sum();
+        return calculateSubtotal(snapshot);
     }
 
-    public boolean applyDiscount(String discountCode) {
-        Discount discount = availableDiscounts.stream()
-                .filter(d -> d.getCode().equals(discountCode))
-                .findFirst()
-                .orElse(null);
+    private double calculateSubtotal(CartSnapshot cart) {
+        CartLines lines = cart.lines();
+        return pricingEngine.subtotal(lines.prices(), lines.quantities(), lines.size());
+    }
 
-        if (discount != null) {
-            appliedDiscountCode = discountCode;
+    /**
+     * Replaces the promotions this cart is priced with, e.g. with an engine compiled once and
+     * shared by all carts. The engine then also decides which discount codes are valid.
+     */
+    public void setPromotionEngine(PromotionEngine promotionEngine) {
+        this.promotionEngine = promotionEngine;
+    }
+
+    /**
+     * Records every successfully paid checkout in {@code orderHistory}.
+     */
+    public void setOrderHistory(OrderHistoryStore orderHistory) {
+        this.orderHistory = orderHistory;
+    }
+
+    /**
+     * Reserves stock in {@code inventory} for everything bought through this cart, either as
+     * items are added or for the whole cart at checkout. Reservations are committed when the
+     * payment succeeds; abandoned carts release theirs when the reservations expire.
+     */
+    public void setInventory(Inventory inventory, ReservationMode reservationMode) {
+        this.inventory = inventory;
+        this.reservationMode = reservationMode;
+    }
+
+    /**
+     * Scores every payment with {@code fraudScorer} before it is sent to the gateway and
+     * declines the ones that score too high.
+     */
+    public void setFraudScorer(FraudScorer fraudScorer) {
+        this.fraudScorer = fraudScorer;
+    }
+
+    /**
+     * Applies a discount code. Stackable codes accumulate; a non-stackable code replaces any
+     * non-stackable code applied before it, so for the built-in codes the last one applied
+     * wins, as it always has.
+     */
+    public boolean applyDiscount(String discountCode) {
+        PromotionEngine engine = promotionEngine;
+        if (engine.isKnownCode(discountCode)) {
+            synchronized (writeLock) {
+                List<String> codes = new ArrayList<>(appliedDiscountCodes);
+                codes.remove(discountCode);
+                if (!engine.isStackableCode(discountCode)) {
+                    codes.removeIf(code -> !engine.isStackableCode(code));
+                }
+                codes.add(discountCode);
+                appliedDiscountCodes = List.copyOf(codes);
+            }
             logger.info("Applied discount: " + discountCode);
             return true;
         }
@@ -54,45 +154,82 @@ public class ShoppingCart implements ShoppingCartService {
     }
 
     public double calculateDiscountAmount() {
-        if (appliedDiscountCode == null) {
-            return 0.0;
-        }
-        Discount discount = availableDiscounts.stream()
-                .filter(d -> d.getCode().equals(appliedDiscountCode))
-                .findFirst()
-                .orElse(null);
-        
-        if (discount != null) {
-            double subtotal = calculateSubtotal();
-            return subtotal * (discount.getPercentage() / 100.0);
-        }
-        return 0.0;
+        return calculateDiscountAmount(snapshot);
+    }
+
+    private double calculateDiscountAmount(CartSnapshot cart) {
+        return promotionEngine.discount(cart, calculateSubtotal(cart), appliedDiscountCodes);
     }
 
     public double calculateTotal() {
-        return calculateSubtotal() - calculateDiscountAmount();
+        return calculateTotal(snapshot);
+    }
+
+    double calculateTotal(CartSnapshot cart) {
+        return calculateSubtotal(cart) - calculateDiscountAmount(cart);
     }
 
     public PaymentResult processPayment(String paymentMethod, double amount) {
-        // Simulate payment processing
+        return processPaymentAsync(paymentMethod, amount).join();
+    }
+
+    private PaymentResult processPayment(String paymentMethod, String instrumentId, double amount,
+            String customerEmail) {
+        return processPaymentAsync(paymentMethod, instrumentId, amount, customerEmail).join();
+    }
+
+    /**
+     * Charges the payment gateway without blocking; the returned future never completes
+     * exceptionally, gateway errors are reported as a failed {@link PaymentResult}.
+     */
+    CompletableFuture<PaymentResult> processPaymentAsync(String paymentMethod, double amount) {
+        return processPaymentAsync(paymentMethod, null, amount, null);
+    }
+
+    /**
+     * @param instrumentId  the card or account being charged, used for per-instrument velocity
+     *                      checks; may be null
+     * @param customerEmail the paying customer, used for per-customer velocity checks; may be null
+     */
+    CompletableFuture<PaymentResult> processPaymentAsync(String paymentMethod, String instrumentId, double amount,
+            String customerEmail) {
         if (amount <= 0) {
             lastPaymentResult = new PaymentResult(false, null, "Invalid amount");
-            return lastPaymentResult;
+            return CompletableFuture.completedFuture(lastPaymentResult);
+        }
+
+        FraudScorer scorer = fraudScorer;
+        if (scorer != null) {
+            double score = scorer.score(instrumentId, customerEmail, amount);
+            if (scorer.isDeclined(score)) {
+                lastPaymentResult = new PaymentResult(false, null, "Payment declined: risk score too high");
+                logger.warning("Payment declined for " + paymentMethod + ", risk score " + String.format("%.2f", score));
+                return CompletableFuture.completedFuture(lastPaymentResult);
+            }
         }
 
         String transactionId = "TXN-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
         logger.info("Processing payment: " + paymentMethod + " for amount: " + amount);
         
-        // Simulate payment processing delay
+        CompletableFuture<PaymentResult> charge;
         try {
-            Thread.sleep(100);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            charge = paymentGateway.charge(transactionId, paymentMethod, amount);
+        } catch (RuntimeException e) {
+            charge = CompletableFuture.failedFuture(e);
         }
-
-        lastPaymentResult = new PaymentResult(true, transactionId, "Payment successful");
-        logger.info("Payment processed successfully: " + transactionId);
-        return lastPaymentResult;
+        return charge.handle((result, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                result = new PaymentResult(false, null, "Payment failed: " + cause.getMessage());
+            }
+            lastPaymentResult = result;
+            if (result.isSuccess()) {
+                logger.info("Payment processed successfully: " + transactionId);
+            } else {
+                logger.warning("Payment failed: " + result.getMessage());
+            }
+            return result;
+        });
     }
 
     public String generateOrderId() {
@@ -102,40 +239,53 @@ public class ShoppingCart implements ShoppingCartService {
     }
 
     public void sendOrderConfirmationEmail(String customerEmail) {
-        String subject = "Order Confirmation - " + orderId;
-        String body = buildEmailBody();
-        
-        logger.info("Sending email to: " + customerEmail);
-        logger.info("Subject: " + subject);
-        logger.info("Body: " + body);
+        prepareOrderConfirmationEmail(customerEmail);
         
         // Simulate email sending
         try {
-            Thread.sleep(50);
+            Thread.sleep(EMAIL_DELAY_MILLIS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
         
+        orderConfirmationEmailSent(customerEmail);
+    }
+
+    void prepareOrderConfirmationEmail(String customerEmail) {
+        String subject = "Order Confirmation - " + orderId;
+        String body = buildEmailBody();
+        
+        logger.info("Sending email to: " + customerEmail);
+        logger.info("Subject: " + subject);
+        logger.info("Body: " + body);
+    }
+
+    void orderConfirmationEmailSent(String customerEmail) {
         emailSentTo = customerEmail;
         logger.info("Email sent successfully to: " + customerEmail);
     }
 
     private String buildEmailBody() {
+        CartSnapshot cart = snapshot;
         StringBuilder body = new StringBuilder();
         body.append("Thank you for your order!\n\n");
         body.append("Order ID: ").append(orderId).append("\n\n");
         body.append("Items:\n");
-        for (CartItem item : items) {
+        for (CartItem item : cart.getItems()) {
             body.append("- ").append(item.getProductName())
                 .append(" x").append(item.getQuantity())
                 .append(" - $").append(item.getPrice()).append("\n");
         }
-        body.append("\nSubtotal: $").append(String.format("%.2f", calculateSubtotal()));
-        if (appliedDiscountCode != null) {
-            body.append("\nDiscount (").append(appliedDiscountCode).append("): -$")
-                .append(String.format("%.2f", calculateDiscountAmount()));
+        body.append("\nSubtotal: $").append(String.format("%.2f", calculateSubtotal(cart)));
+        double discountAmount = calculateDiscountAmount(cart);
+        if (discountAmount > 0) {
+            body.append("\nDiscount");
+            if (!appliedDiscountCodes.isEmpty()) {
+                body.append(" (").append(String.join(", ", appliedDiscountCodes)).append(")");
+            }
+            body.append(": -$").append(String.format("%.2f", discountAmount));
         }
-        body.append("\nTotal: $").append(String.format("%.2f", calculateTotal()));
+        body.append("\nTotal: $").append(String.format("%.2f", calculateTotal(cart)));
         
         if (lastPaymentResult != null && lastPaymentResult.isSuccess()) {
             body.append("\n\nTransaction ID: ").append(lastPaymentResult.getTransactionId());
@@ -145,14 +295,30 @@ public class ShoppingCart implements ShoppingCartService {
     }
 
     public void checkout(String customerEmail, String paymentMethod) {
+        checkout(customerEmail, paymentMethod, null);
+    }
+
+    /**
+     * Checks out like {@link #checkout(String, String)}, additionally identifying the card or
+     * account charged, e.g. by its fingerprint, so the fraud scorer can limit its velocity.
+     */
+    public void checkout(String customerEmail, String paymentMethod, String instrumentId) {
         // Generate order ID
         generateOrderId();
         
         // Calculate total
-        double total = calculateTotal();
+        CartSnapshot cart = snapshot;
+        double total = calculateTotal(cart);
         
-        // Process payment
-        processPayment(paymentMethod, total);
+        // Reserve stock and process payment
+        PaymentResult result;
+        if (reserveStock(cart)) {
+            result = processPayment(paymentMethod, instrumentId, total, customerEmail);
+            result = settleReservations(result, total).join();
+        } else {
+            result = lastPaymentResult;
+        }
+        recordOrder(cart, result);
         
         // Send confirmation email
         sendOrderConfirmationEmail(customerEmail);
@@ -160,13 +326,156 @@ public class ShoppingCart implements ShoppingCartService {
         logger.info("Checkout completed for order: " + orderId);
     }
 
+    /**
+     * Makes sure every item of {@code cart} is covered by an active reservation with at least
+     * {@link #MIN_RESERVATION_TIME_LEFT} to go, renewing the others. On failure the payment
+     * result is set to a failed "Insufficient stock" result.
+     */
+    boolean reserveStock(CartSnapshot cart) {
+        Inventory stock = inventory;
+        if (stock == null) {
+            return true;
+        }
+        Map<String, Long> needed = new HashMap<>();
+        for (CartItem item : cart.getItems()) {
+            if (item.getQuantity() > 0) {
+                needed.merge(item.getProductName(), (long) item.getQuantity(), Long::sum);
+            }
+        }
+        synchronized (writeLock) {
+            reservations.removeIf(reservation -> !reservation.isActive());
+            for (ListIterator<Reservation> it = reservations.listIterator(); it.hasNext(); ) {
+                Reservation reservation = it.next();
+                if (reservation.getDelay(TimeUnit.NANOSECONDS) < MIN_RESERVATION_TIME_LEFT.toNanos()) {
+                    Reservation renewed = stock.renew(reservation);
+                    if (renewed != null) {
+                        it.set(renewed);
+                    } else {
+                        it.remove();
+                    }
+                }
+            }
+            for (Reservation reservation : reservations) {
+                needed.computeIfPresent(reservation.getSku(), (sku, quantity) ->
+                        quantity > reservation.getQuantity() ? quantity - reservation.getQuantity() : null);
+            }
+            for (Map.Entry<String, Long> entry : needed.entrySet()) {
+                Reservation reservation = stock.reserve(entry.getKey(), entry.getValue());
+                if (reservation == null) {
+                    if (reservationMode == ReservationMode.AT_CHECKOUT) {
+                        releaseReservations(stock);
+                    }
+                    lastPaymentResult = new PaymentResult(false, null, "Insufficient stock for " + entry.getKey());
+                    logger.warning("Payment failed: " + lastPaymentResult.getMessage());
+                    return false;
+                }
+                reservations.add(reservation);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Commits the reservations of a paid checkout, or releases them after a failed one if they
+     * were taken at checkout. A reservation that expired during the payment is taken again; if
+     * the stock has been sold in the meantime, the units already committed go back on sale,
+     * the charge is refunded and the returned result is a failed one.
+     */
+    CompletableFuture<PaymentResult> settleReservations(PaymentResult result, double amount) {
+        Inventory stock = inventory;
+        if (stock == null) {
+            return CompletableFuture.completedFuture(result);
+        }
+        List<Reservation> committed = new ArrayList<>();
+        List<String> shortSkus = new ArrayList<>();
+        synchronized (writeLock) {
+            if (result.isSuccess()) {
+                for (Reservation reservation : reservations) {
+                    if (stock.commit(reservation)) {
+                        committed.add(reservation);
+                        continue;
+                    }
+                    Reservation retaken = stock.reserve(reservation.getSku(), reservation.getQuantity());
+                    if (retaken != null && stock.commit(retaken)) {
+                        committed.add(retaken);
+                    } else {
+                        if (retaken != null) {
+                            stock.release(retaken);
+                        }
+                        shortSkus.add(reservation.getSku());
+                    }
+                }
+                reservations.clear();
+                if (!shortSkus.isEmpty()) {
+                    for (Reservation reservation : committed) {
+                        if (stock.isTracked(reservation.getSku())) {
+                            stock.addStock(reservation.getSku(), reservation.getQuantity());
+                        }
+                    }
+                }
+            } else if (reservationMode == ReservationMode.AT_CHECKOUT) {
+                releaseReservations(stock);
+            }
+        }
+        if (shortSkus.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        String transactionId = result.getTransactionId();
+        logger.warning("Stock sold out during payment " + transactionId + ": " + shortSkus + "; refunding");
+        CompletableFuture<PaymentResult> refund;
+        try {
+            refund = paymentGateway.refund(transactionId, amount);
+        } catch (RuntimeException e) {
+            refund = CompletableFuture.failedFuture(e);
+        }
+        return refund.handle((refunded, error) -> {
+            boolean ok = error == null && refunded.isSuccess();
+            if (!ok) {
+                logger.severe("Refund of " + transactionId + " failed; needs manual follow-up");
+            }
+            PaymentResult failed = new PaymentResult(false, null, "Insufficient stock for "
+                    + String.join(", ", shortSkus) + (ok ? "; payment refunded" : "; refund pending"));
+            lastPaymentResult = failed;
+            return failed;
+        });
+    }
+
+    private void releaseReservations(Inventory stock) {
+        reservations.forEach(stock::release);
+        reservations.clear();
+    }
+
+    void recordOrder(CartSnapshot cart, PaymentResult result) {
+        OrderHistoryStore history = orderHistory;
+        if (history != null && result.isSuccess()) {
+            double subtotal = calculateSubtotal(cart);
+            history.append(orderId, cart.getItems(), subtotal, calculateDiscountAmount(cart),
+                    appliedDiscountCodes, result.getTransactionId());
+        }
+    }
+
+    /**
+     * Returns the current version of the cart contents in O(1), without copying.
+     */
+    public CartSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     // Getters for testing
     public List<CartItem> getItems() {
-        return new ArrayList<>(items);
+        return snapshot.getItems();
     }
 
+    /**
+     * Returns the most recently applied discount code, or null if none was applied.
+     */
     public String getAppliedDiscountCode() {
-        return appliedDiscountCode;
+        List<String> codes = appliedDiscountCodes;
+        return codes.isEmpty() ? null : codes.get(codes.size() - 1);
+    }
+
+    public List<String> getAppliedDiscountCodes() {
+        return appliedDiscountCodes;
     }
 
     public String getOrderId() {
@@ -180,5 +489,9 @@ public class ShoppingCart implements ShoppingCartService {
     public PaymentResult getLastPaymentResult() {
         return lastPaymentResult;
     }
+
+    PaymentGateway getPaymentGateway() {
+        return paymentGateway;
+    }
 }
 
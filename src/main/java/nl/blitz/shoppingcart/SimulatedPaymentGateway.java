@@ -0,0 +1,34 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for a real payment provider that approves every charge after a fixed delay.
+ * The delay is scheduled, so no thread is parked while the "gateway" is working.
+ */
+public class SimulatedPaymentGateway implements PaymentGateway {
+    private final Executor delay;
+
+    public SimulatedPaymentGateway() {
+        this(Duration.ofMillis(100));
+    }
+
+    public SimulatedPaymentGateway(Duration latency) {
+        this.delay = CompletableFuture.delayedExecutor(latency.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> charge(String transactionId, String paymentMethod, double amount) {
+        return CompletableFuture.supplyAsync(
+                () -> new PaymentResult(true, transactionId, "Payment successful"), delay);
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> refund(String transactionId, double amount) {
+        return CompletableFuture.supplyAsync(
+                () -> new PaymentResult(true, transactionId, "Refund successful"), delay);
+    }
+}
@@ -0,0 +1,72 @@
+package nl.blitz.shoppingcart;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stock count of one SKU split over several independently updated stripes.
+ *
+ * Each thread starts at its own stripe, so concurrent buyers of a hot SKU mostly CAS
+ * different cache lines instead of all retrying on one counter. A stripe that runs dry is
+ * topped up from the others by taking what they hold. The total never goes below zero; a
+ * take can fail spuriously only while stock is nearly exhausted and other takes are in
+ * flight, in which case the caller sees the SKU as sold out.
+ */
+final class StripedStock {
+    // Cells are 8 longs apart so every stripe sits on its own 64-byte cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    StripedStock(int stripes, long quantity) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("stripes must be a power of two: " + stripes);
+        }
+        this.cells = new AtomicLongArray(stripes * PADDING);
+        this.mask = stripes - 1;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            long share = quantity / stripes + (stripe < quantity % stripes ? 1 : 0);
+            cells.set(stripe * PADDING, share);
+        }
+    }
+
+    boolean tryTake(long quantity) {
+        int start = home();
+        long remaining = quantity;
+        for (int i = 0; i <= mask && remaining > 0; i++) {
+            int cell = ((start + i) & mask) * PADDING;
+            long current;
+            long taken;
+            do {
+                current = cells.get(cell);
+                taken = Math.min(current, remaining);
+            } while (taken > 0 && !cells.compareAndSet(cell, current, current - taken));
+            remaining -= taken;
+        }
+        if (remaining > 0) {
+            // Not enough stock across all stripes, put back what was collected
+            give(quantity - remaining);
+            return false;
+        }
+        return true;
+    }
+
+    void give(long quantity) {
+        if (quantity > 0) {
+            cells.getAndAdd(home() * PADDING, quantity);
+        }
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int stripe = 0; stripe <= mask; stripe++) {
+            sum += cells.get(stripe * PADDING);
+        }
+        return sum;
+    }
+
+    private int home() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    }
+}
@@ -0,0 +1,100 @@
+package nl.blitz.shoppingcart;
+
+import nl.blitz.util.Hashing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Approximate per-key event counts over a sliding time window, in fixed memory.
+ *
+ * The window is a ring of time slices, each a count-min sketch of {@code depth} rows of
+ * {@code width} counters updated conservatively (only the rows at the current minimum are
+ * raised). Each counter is tagged with the slice epoch it was last written in, and a counter
+ * whose tag is not the epoch its slot stands for reads as zero, so the window slides in steps
+ * of one slice without ever clearing a slice in bulk. Estimates never undercount; they
+ * overcount only through hash collisions, which stay rare while a slice sees fewer events
+ * than it has counters per row. Memory is {@code slices * depth * width} longs, however many
+ * distinct keys are seen.
+ */
+class WindowedCountMinSketch {
+    private final AtomicLongArray[] slices;
+    private final int depth;
+    private final int mask;
+    private final long sliceNanos;
+    private final long seed;
+    private final LongSupplier nanoTime;
+
+    WindowedCountMinSketch(long windowNanos, int sliceCount, int depth, int width, LongSupplier nanoTime) {
+        if (Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("width must be a power of two: " + width);
+        }
+        this.slices = new AtomicLongArray[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new AtomicLongArray(depth * width);
+        }
+        this.depth = depth;
+        this.mask = width - 1;
+        this.sliceNanos = Math.max(1, windowNanos / sliceCount);
+        // Random per instance, so colliding keys cannot be precomputed
+        this.seed = ThreadLocalRandom.current().nextLong();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Counts one event for {@code key} and returns the estimated count in the window,
+     * including this event.
+     */
+    int incrementAndEstimate(String key) {
+        long epoch = nanoTime.getAsLong() / sliceNanos;
+        long hash = Hashing.hash64(key, seed);
+        AtomicLongArray current = slices[(int) Math.floorMod(epoch, (long) slices.length)];
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, count(current.get(row * (mask + 1) + ((h1 + row * h2) & mask)), epoch));
+        }
+        int raised = min + 1;
+        long tagged = tag(epoch, raised);
+        for (int row = 0; row < depth; row++) {
+            int index = row * (mask + 1) + ((h1 + row * h2) & mask);
+            long cell;
+            do {
+                cell = current.get(index);
+            } while (count(cell, epoch) < raised && !current.compareAndSet(index, cell, tagged));
+        }
+        return estimate(hash, epoch);
+    }
+
+    int estimate(String key) {
+        return estimate(Hashing.hash64(key, seed), nanoTime.getAsLong() / sliceNanos);
+    }
+
+    private int estimate(long hash, long epoch) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int total = 0;
+        for (int i = 0; i < slices.length; i++) {
+            // The epoch within the window that slot i stands for
+            long sliceEpoch = epoch - Math.floorMod(epoch - i, (long) slices.length);
+            AtomicLongArray slice = slices[i];
+            int min = Integer.MAX_VALUE;
+            for (int row = 0; row < depth && min > 0; row++) {
+                min = Math.min(min, count(slice.get(row * (mask + 1) + ((h1 + row * h2) & mask)), sliceEpoch));
+            }
+            total += min;
+        }
+        return total;
+    }
+
+    // Low 32 bits of the epoch in the high half, the count in the low half
+    private static long tag(long epoch, int count) {
+        return (epoch << 32) | (count & 0xFFFFFFFFL);
+    }
+
+    private static int count(long cell, long epoch) {
+        return (int) (cell >>> 32) == (int) epoch ? (int) cell : 0;
+    }
+}
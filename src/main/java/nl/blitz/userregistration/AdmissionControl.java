@@ -0,0 +1,94 @@
+package nl.blitz.userregistration;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for registration and activation.
+ *
+ * Requests are first checked against per-email and per-caller rate limits, then against
+ * global concurrency limits on the expensive stages (password hashing and email sending).
+ * Every check is non-blocking, so a rejected request costs a few atomic operations and
+ * never queues behind admitted work.
+ */
+public class AdmissionControl {
+    private final RateLimiter perEmail;
+    private final RateLimiter perCaller;
+    private final Semaphore hashingPermits;
+    private final Semaphore emailPermits;
+    private final LongAdder rejected;
+
+    public AdmissionControl(RateLimiter perEmail, RateLimiter perCaller, int maxConcurrentHashing, int maxConcurrentEmails) {
+        this.perEmail = perEmail;
+        this.perCaller = perCaller;
+        this.hashingPermits = new Semaphore(maxConcurrentHashing);
+        this.emailPermits = new Semaphore(maxConcurrentEmails);
+        this.rejected = new LongAdder();
+    }
+
+    /**
+     * Admission control that admits everything; the default for {@link UserRegistration}.
+     */
+    public static AdmissionControl unlimited() {
+        return new AdmissionControl(null, null, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Defaults: 5 attempts per email per 10 minutes, bursts of 20 per caller refilling one
+     * per second, and stage limits scaled to the number of cores.
+     */
+    public static AdmissionControl withDefaults() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new AdmissionControl(
+                new RateLimiter(5, Duration.ofMinutes(2)),
+                new RateLimiter(20, Duration.ofSeconds(1)),
+                cores,
+                cores * 4);
+    }
+
+    /**
+     * Checks the rate limits for one attempt. A null caller skips the per-caller limit, a null
+     * limiter disables that limit altogether.
+     */
+    public boolean admit(String callerId, String email) {
+        if (perCaller != null && callerId != null && !perCaller.tryAcquire(callerId)) {
+            rejected.increment();
+            return false;
+        }
+        if (perEmail != null && email != null && !perEmail.tryAcquire(email.toLowerCase(Locale.ROOT))) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public boolean tryAcquireHashing() {
+        return tryAcquire(hashingPermits);
+    }
+
+    public void releaseHashing() {
+        hashingPermits.release();
+    }
+
+    public boolean tryAcquireEmail() {
+        return tryAcquire(emailPermits);
+    }
+
+    public void releaseEmail() {
+        emailPermits.release();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private boolean tryAcquire(Semaphore permits) {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+}
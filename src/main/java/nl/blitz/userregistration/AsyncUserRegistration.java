@@ -0,0 +1,82 @@
+package nl.blitz.userregistration;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AsyncUserRegistrationService} on top of a {@link UserRegistration}, sharing its
+ * users, tokens, admission control and event feed. Validation, hashing and storage run on
+ * the calling thread; the simulated email delivery is scheduled rather than slept, so no
+ * thread is parked while an email is "in flight".
+ */
+public class AsyncUserRegistration implements AsyncUserRegistrationService {
+    private static final Executor EMAIL_DELAY =
+            CompletableFuture.delayedExecutor(UserRegistration.EMAIL_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
+    private final UserRegistration registration;
+
+    public AsyncUserRegistration(UserRegistration registration) {
+        this.registration = registration;
+    }
+
+    @Override
+    public CompletableFuture<RegistrationResult> registerUser(String email, String password) {
+        return registerUser(null, email, password);
+    }
+
+    public CompletableFuture<RegistrationResult> registerUser(String callerId, String email, String password) {
+        AdmissionControl admission = registration.getAdmissionControl();
+        RegistrationResult created = registration.createAccount(callerId, email, password, admission);
+        if (!created.isSuccess()) {
+            return CompletableFuture.completedFuture(created);
+        }
+        String token = created.getVerificationToken();
+        return sendVerificationEmail(email, token)
+                .whenComplete((ignored, error) -> admission.releaseEmail())
+                .thenApply(ignored -> registration.completeRegistration(email, token));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> activateAccount(String email, String token) {
+        return activateAccount(null, email, token);
+    }
+
+    public CompletableFuture<Boolean> activateAccount(String callerId, String email, String token) {
+        AdmissionControl admission = registration.getAdmissionControl();
+        if (!admission.admit(callerId, email) || !admission.tryAcquireEmail()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        boolean confirmed;
+        try {
+            confirmed = registration.confirmActivation(email, token);
+        } catch (RuntimeException e) {
+            admission.releaseEmail();
+            throw e;
+        }
+        if (!confirmed) {
+            admission.releaseEmail();
+            return CompletableFuture.completedFuture(false);
+        }
+        return sendWelcomeEmail(email)
+                .whenComplete((ignored, error) -> admission.releaseEmail())
+                .thenApply(ignored -> {
+                    registration.completeActivation(email);
+                    return true;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> sendVerificationEmail(String email, String token) {
+        registration.prepareVerificationEmail(email, token);
+        return CompletableFuture.runAsync(() -> registration.verificationEmailSent(email), EMAIL_DELAY);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendWelcomeEmail(String email) {
+        if (!registration.prepareWelcomeEmail(email)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> registration.welcomeEmailSent(email), EMAIL_DELAY);
+    }
+}
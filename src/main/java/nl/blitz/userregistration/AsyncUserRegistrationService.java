@@ -0,0 +1,20 @@
+package nl.blitz.userregistration;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking companion to {@link UserRegistrationService} for callers on an asynchronous
+ * stack. Every operation returns immediately; the returned futures complete once the
+ * operation, including any email it sends, has finished.
+ */
+public interface AsyncUserRegistrationService {
+    // User registration
+    CompletableFuture<RegistrationResult> registerUser(String email, String password);
+    
+    // Account activation
+    CompletableFuture<Boolean> activateAccount(String email, String token);
+    
+    // Email operations
+    CompletableFuture<Void> sendVerificationEmail(String email, String token);
+    CompletableFuture<Void> sendWelcomeEmail(String email);
+}
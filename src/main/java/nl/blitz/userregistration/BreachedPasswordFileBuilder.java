@@ -0,0 +1,179 @@
+package nl.blitz.userregistration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Offline tool that turns a breach corpus into the file read by {@link BreachedPasswordScreen}.
+ *
+ * The input has one hex SHA-1 hash per line, optionally followed by {@code :count}, sorted by
+ * hash, as in the "ordered by hash" Pwned Passwords download; other lists can be prepared with
+ * {@code sort}. Duplicates are dropped. The input is read twice, once to count the hashes and
+ * once to write them, and the output is written through a memory mapping, so neither the
+ * corpus nor the Bloom filter has to fit on the heap. The file is built next to the output
+ * and then atomically renamed over it, so a screen that has the old file mapped keeps working.
+ *
+ * Usage: {@code BreachedPasswordFileBuilder <sorted-hashes.txt> <output> [bits-per-hash]}
+ */
+public class BreachedPasswordFileBuilder {
+    public static final int DEFAULT_BITS_PER_HASH = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BreachedPasswordFileBuilder <sorted-hashes.txt> <output> [bits-per-hash]");
+            System.exit(2);
+        }
+        int bitsPerHash = args.length == 3 ? Integer.parseInt(args[2]) : DEFAULT_BITS_PER_HASH;
+        long start = System.nanoTime();
+        long count = build(Paths.get(args[0]), Paths.get(args[1]), bitsPerHash);
+        System.out.printf("Wrote %d hashes to %s in %d s%n", count, args[1],
+                (System.nanoTime() - start) / 1_000_000_000L);
+    }
+
+    /**
+     * Builds the screening file and returns the number of distinct hashes written. An existing
+     * output is replaced atomically; screens opened on it keep the old contents, so to reload,
+     * open a new {@link BreachedPasswordScreen} and pass it to
+     * {@link UserRegistration#setPasswordScreen} again.
+     *
+     * @param bitsPerHash Bloom filter bits per hash; 10 gives roughly a 1% false positive rate
+     */
+    public static long build(Path sortedHashes, Path output, int bitsPerHash) throws IOException {
+        if (bitsPerHash < 1) {
+            throw new IllegalArgumentException("bitsPerHash must be at least 1: " + bitsPerHash);
+        }
+        long count = scan(sortedHashes, null);
+        long neededBlocks = Math.max(1, (count * bitsPerHash + BreachedPasswordScreen.BLOCK_BITS - 1)
+                / BreachedPasswordScreen.BLOCK_BITS);
+        long blocks = neededBlocks == 1 ? 1 : Long.highestOneBit(neededBlocks - 1) * 2;
+        int probes = (int) Math.max(1, Math.min(BreachedPasswordScreen.MAX_PROBES,
+                Math.round((double) blocks * BreachedPasswordScreen.BLOCK_BITS / Math.max(1, count) * Math.log(2))));
+        long bloomBytes = blocks * (BreachedPasswordScreen.BLOCK_BITS / 8);
+        long hashBytes = count * BreachedPasswordScreen.HASH_LENGTH;
+
+        // Never truncate the output in place: a live mapping of it would fault on the lost pages
+        Path absolute = output.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName() + ".", ".tmp");
+        try {
+            write(sortedHashes, temp, count, blocks, probes, bloomBytes, hashBytes);
+            Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return count;
+    }
+
+    private static void write(Path sortedHashes, Path file, long count, long blocks, int probes,
+                              long bloomBytes, long hashBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            BreachedPasswordScreen.Region header = new BreachedPasswordScreen.Region(channel,
+                    FileChannel.MapMode.READ_WRITE, 0, BreachedPasswordScreen.HEADER_SIZE,
+                    BreachedPasswordScreen.HEADER_SIZE);
+            // The Bloom region is only touched in 8-byte words and each hash lies in one chunk
+            BreachedPasswordScreen.Region bloom = new BreachedPasswordScreen.Region(channel,
+                    FileChannel.MapMode.READ_WRITE, BreachedPasswordScreen.HEADER_SIZE, bloomBytes, 1L << 30);
+            BreachedPasswordScreen.Region hashes = new BreachedPasswordScreen.Region(channel,
+                    FileChannel.MapMode.READ_WRITE, BreachedPasswordScreen.HEADER_SIZE + bloomBytes, hashBytes,
+                    (1L << 30) / BreachedPasswordScreen.HASH_LENGTH * BreachedPasswordScreen.HASH_LENGTH);
+
+            long[] written = {0};
+            scan(sortedHashes, hash -> {
+                hashes.put(written[0] * BreachedPasswordScreen.HASH_LENGTH, hash);
+                written[0]++;
+                addToBloom(bloom, blocks - 1, probes, hash);
+            });
+            if (written[0] != count) {
+                throw new IllegalStateException("Input changed while building: " + sortedHashes);
+            }
+
+            // Header last, so a partially written file is never mistaken for a valid one
+            bloom.force();
+            hashes.force();
+            header.putLong(8, count);
+            header.putLong(16, blocks);
+            header.putLong(24, (long) probes << 32);
+            header.putLong(0, ((long) BreachedPasswordScreen.MAGIC << 32) | BreachedPasswordScreen.VERSION);
+            header.force();
+        }
+    }
+
+    private static void addToBloom(BreachedPasswordScreen.Region bloom, long blockMask, int probes, byte[] hash) {
+        long k0 = BreachedPasswordScreen.readLong(hash, 0);
+        long k1 = BreachedPasswordScreen.readLong(hash, 8);
+        long block = (k0 & blockMask) * (BreachedPasswordScreen.BLOCK_BITS / 8);
+        for (int i = 0; i < probes; i++) {
+            int bit = (int) (k1 >>> (i * 9)) & (BreachedPasswordScreen.BLOCK_BITS - 1);
+            long word = block + (bit >>> 6) * 8L;
+            bloom.putLong(word, bloom.getLong(word) | (1L << bit));
+        }
+    }
+
+    /**
+     * Parses and validates the input, passing each distinct hash to {@code sink} (if any), and
+     * returns how many there were.
+     */
+    private static long scan(Path sortedHashes, HashSink sink) throws IOException {
+        long count = 0;
+        long lineNumber = 0;
+        byte[] previous = null;
+        byte[] hash = new byte[BreachedPasswordScreen.HASH_LENGTH];
+        try (BufferedReader reader = Files.newBufferedReader(sortedHashes, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (!parseHash(line, hash)) {
+                    throw new IllegalArgumentException("Not a SHA-1 hash on line " + lineNumber + ": " + line);
+                }
+                if (previous != null) {
+                    int cmp = Arrays.compareUnsigned(previous, hash);
+                    if (cmp == 0) {
+                        continue;
+                    }
+                    if (cmp > 0) {
+                        throw new IllegalArgumentException("Input is not sorted by hash at line " + lineNumber);
+                    }
+                } else {
+                    previous = new byte[BreachedPasswordScreen.HASH_LENGTH];
+                }
+                System.arraycopy(hash, 0, previous, 0, hash.length);
+                count++;
+                if (sink != null) {
+                    sink.accept(hash);
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean parseHash(String line, byte[] hash) {
+        int hexLength = BreachedPasswordScreen.HASH_LENGTH * 2;
+        if (line.length() < hexLength || (line.length() > hexLength && line.charAt(hexLength) != ':')) {
+            return false;
+        }
+        for (int i = 0; i < BreachedPasswordScreen.HASH_LENGTH; i++) {
+            int high = Character.digit(line.charAt(2 * i), 16);
+            int low = Character.digit(line.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            hash[i] = (byte) ((high << 4) | low);
+        }
+        return true;
+    }
+
+    private interface HashSink {
+        void accept(byte[] hash) throws IOException;
+    }
+}
@@ -0,0 +1,210 @@
+package nl.blitz.userregistration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Rejects passwords that appear in a breach corpus of SHA-1 hashes, without loading the corpus
+ * onto the heap.
+ *
+ * The corpus is a file written by {@link BreachedPasswordFileBuilder}: a header, a blocked
+ * Bloom filter and the sorted, distinct 20-byte hashes. The whole file is memory-mapped in
+ * chunks, so hundreds of millions of hashes cost page cache rather than heap. A check hashes
+ * the password and probes one 64-byte Bloom block, which answers most clean passwords with a
+ * single cache miss; only the Bloom filter's hits and false positives fall through to a
+ * binary search of the sorted hashes.
+ */
+public class BreachedPasswordScreen {
+    static final int MAGIC = 0x42505746;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int HASH_LENGTH = 20;
+    // One cache line of Bloom bits per hash; nine bits of the probe hash pick each bit in it
+    static final int BLOCK_BITS = 512;
+    static final int MAX_PROBES = 7;
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    private final long hashCount;
+    private final long blockMask;
+    private final int probes;
+    private final Region bloom;
+    private final Region hashes;
+    private final ThreadLocal<MessageDigest> sha1;
+    private final ThreadLocal<byte[]> digest;
+
+    private BreachedPasswordScreen(long hashCount, long blocks, int probes, Region bloom, Region hashes) {
+        this.hashCount = hashCount;
+        this.blockMask = blocks - 1;
+        this.probes = probes;
+        this.bloom = bloom;
+        this.hashes = hashes;
+        this.sha1 = ThreadLocal.withInitial(BreachedPasswordScreen::newSha1);
+        this.digest = ThreadLocal.withInitial(() -> new byte[HASH_LENGTH]);
+    }
+
+    /**
+     * Maps a screening file written by {@link BreachedPasswordFileBuilder}. The screen keeps
+     * the contents it opened and does not notice the file being rebuilt.
+     */
+    public static BreachedPasswordScreen open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a breached password file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported breached password file version " + version);
+            }
+            long hashCount = header.getLong();
+            long blocks = header.getLong();
+            int probes = header.getInt();
+            long bloomBytes = blocks * (BLOCK_BITS / 8);
+            long hashBytes = hashCount * HASH_LENGTH;
+            if (Long.bitCount(blocks) != 1 || probes < 1 || probes > MAX_PROBES
+                    || channel.size() != HEADER_SIZE + bloomBytes + hashBytes) {
+                throw new IllegalArgumentException("Corrupt breached password file: " + file);
+            }
+            // The mappings stay valid after the channel is closed
+            Region bloom = new Region(channel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE, bloomBytes, CHUNK_SIZE);
+            Region hashes = new Region(channel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE + bloomBytes,
+                    hashBytes, CHUNK_SIZE / HASH_LENGTH * HASH_LENGTH);
+            return new BreachedPasswordScreen(hashCount, blocks, probes, bloom, hashes);
+        }
+    }
+
+    /**
+     * Whether the SHA-1 of the password's UTF-8 bytes is in the corpus.
+     */
+    public boolean isBreached(String password) {
+        if (password == null) {
+            return false;
+        }
+        byte[] hash = digest.get();
+        MessageDigest md = sha1.get();
+        md.update(password.getBytes(StandardCharsets.UTF_8));
+        try {
+            md.digest(hash, 0, HASH_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-1 digest failed", e);
+        }
+        return isBreachedHash(hash);
+    }
+
+    boolean isBreachedHash(byte[] hash) {
+        long k0 = readLong(hash, 0);
+        long k1 = readLong(hash, 8);
+        int k2 = (int) (readLong(hash, 12) & 0xFFFFFFFFL);
+        return mightContain(k0, k1) && contains(k0, k1, k2);
+    }
+
+    public long size() {
+        return hashCount;
+    }
+
+    private boolean mightContain(long k0, long k1) {
+        long block = (k0 & blockMask) * (BLOCK_BITS / 8);
+        for (int i = 0; i < probes; i++) {
+            int bit = (int) (k1 >>> (i * 9)) & (BLOCK_BITS - 1);
+            if ((bloom.getLong(block + (bit >>> 6) * 8L) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(long k0, long k1, int k2) {
+        long low = 0;
+        long high = hashCount - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long offset = mid * HASH_LENGTH;
+            int cmp = Long.compareUnsigned(hashes.getLong(offset), k0);
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(hashes.getLong(offset + 8), k1);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compareUnsigned(hashes.getInt(offset + 16), k2);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * A file range mapped as consecutive buffers of {@code chunkSize} bytes, since one mapping
+     * cannot exceed 2 GB. Values are big-endian and must not straddle a chunk boundary.
+     */
+    static final class Region {
+        private final MappedByteBuffer[] chunks;
+        private final long chunkSize;
+
+        Region(FileChannel channel, FileChannel.MapMode mode, long offset, long length, long chunkSize)
+                throws IOException {
+            int count = (int) ((length + chunkSize - 1) / chunkSize);
+            this.chunks = new MappedByteBuffer[count];
+            this.chunkSize = chunkSize;
+            for (int i = 0; i < count; i++) {
+                long start = i * chunkSize;
+                chunks[i] = channel.map(mode, offset + start, Math.min(chunkSize, length - start));
+            }
+        }
+
+        long getLong(long position) {
+            return chunks[(int) (position / chunkSize)].getLong((int) (position % chunkSize));
+        }
+
+        int getInt(long position) {
+            return chunks[(int) (position / chunkSize)].getInt((int) (position % chunkSize));
+        }
+
+        void putLong(long position, long value) {
+            chunks[(int) (position / chunkSize)].putLong((int) (position % chunkSize), value);
+        }
+
+        void put(long position, byte[] bytes) {
+            ByteBuffer chunk = chunks[(int) (position / chunkSize)].duplicate();
+            chunk.position((int) (position % chunkSize));
+            chunk.put(bytes);
+        }
+
+        void force() {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package nl.blitz.userregistration;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Bitmap over non-negative int positions that supports concurrent set/clear without locks.
+ *
+ * Bits live in fixed-size segments that are allocated on first use and never move, so a
+ * writer can never lose an update to a concurrent resize. Only the small directory of segments
+ * is copied when a segment is added, so an empty bitmap costs next to nothing.
+ */
+class ConcurrentBitmap {
+    private static final int SEGMENT_BITS = 16;
+    private static final int BITS_PER_SEGMENT = 1 << SEGMENT_BITS;
+    private static final int WORDS_PER_SEGMENT = BITS_PER_SEGMENT / Long.SIZE;
+
+    // Copied on write under the bitmap's monitor; readers never lock
+    private volatile AtomicLongArray[] segments = new AtomicLongArray[0];
+
+    void set(int position) {
+        long mask = 1L << position;
+        int word = wordIndex(position);
+        segment(position, true).getAndUpdate(word, bits -> bits | mask);
+    }
+
+    void clear(int position) {
+        AtomicLongArray segment = segment(position, false);
+        if (segment != null) {
+            long mask = 1L << position;
+            segment.getAndUpdate(wordIndex(position), bits -> bits & ~mask);
+        }
+    }
+
+    boolean get(int position) {
+        AtomicLongArray segment = segment(position, false);
+        return segment != null && (segment.get(wordIndex(position)) & (1L << position)) != 0;
+    }
+
+    /**
+     * Returns the first set position at or after {@code from}, or -1 if there is none.
+     */
+    int nextSetBit(int from) {
+        if (from < 0) {
+            return -1;
+        }
+        AtomicLongArray[] current = segments;
+        for (int s = from >>> SEGMENT_BITS; s < current.length; s++) {
+            AtomicLongArray segment = current[s];
+            if (segment == null) {
+                continue;
+            }
+            int base = s << SEGMENT_BITS;
+            int startWord = s == from >>> SEGMENT_BITS ? wordIndex(from) : 0;
+            for (int w = startWord; w < WORDS_PER_SEGMENT; w++) {
+                long bits = segment.get(w);
+                if (w == startWord && base + w * Long.SIZE < from) {
+                    bits &= -1L << from;
+                }
+                if (bits != 0) {
+                    return base + w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Weakly consistent stream of the set positions in ascending order.
+     */
+    IntStream stream() {
+        return IntStream.iterate(nextSetBit(0), i -> i >= 0, i -> i == Integer.MAX_VALUE ? -1 : nextSetBit(i + 1));
+    }
+
+    private AtomicLongArray segment(int position, boolean create) {
+        int index = position >>> SEGMENT_BITS;
+        AtomicLongArray[] current = segments;
+        AtomicLongArray segment = index < current.length ? current[index] : null;
+        if (segment == null && create) {
+            segment = addSegment(index);
+        }
+        return segment;
+    }
+
+    private synchronized AtomicLongArray addSegment(int index) {
+        AtomicLongArray[] current = segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        AtomicLongArray[] grown = Arrays.copyOf(current, Math.max(current.length, index + 1));
+        grown[index] = new AtomicLongArray(WORDS_PER_SEGMENT);
+        segments = grown;
+        return grown[index];
+    }
+
+    private static int wordIndex(int position) {
+        return (position & (BITS_PER_SEGMENT - 1)) >>> 6;
+    }
+}
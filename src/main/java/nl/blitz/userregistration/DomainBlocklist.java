@@ -0,0 +1,232 @@
+package nl.blitz.userregistration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable set of blocked email domains, e.g. disposable mail providers.
+ *
+ * An entry {@code example.com} blocks exactly that domain; {@code *.example.com} blocks every
+ * subdomain of it. Entries are stored as a trie over reversed labels ({@code com}, then
+ * {@code example}) flattened into parallel arrays: the children of a node are contiguous and
+ * sorted, and label text lives in one shared byte pool in which repeated labels are stored
+ * once. A lookup walks the domain's labels right to left in place, comparing characters
+ * case-insensitively against the pool, so it allocates nothing.
+ *
+ * Instances never change; to update the list, load a new one and swap the reference.
+ */
+public class DomainBlocklist {
+    private static final byte EXACT = 1;
+    private static final byte SUBDOMAINS = 2;
+
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] labelStart;
+    private final int[] labelLength;
+    private final byte[] flags;
+    private final byte[] labels;
+    private final int size;
+
+    private DomainBlocklist(int[] firstChild, int[] childCount, int[] labelStart, int[] labelLength,
+                            byte[] flags, byte[] labels, int size) {
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.labelStart = labelStart;
+        this.labelLength = labelLength;
+        this.flags = flags;
+        this.labels = labels;
+        this.size = size;
+    }
+
+    public static DomainBlocklist empty() {
+        return of(List.of());
+    }
+
+    /**
+     * Loads a blocklist with one domain or {@code *.domain} per line. Blank lines and lines
+     * starting with {@code #} are skipped.
+     */
+    public static DomainBlocklist load(Path file) throws IOException {
+        List<String> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    entries.add(line);
+                }
+            }
+        }
+        return of(entries);
+    }
+
+    public static DomainBlocklist of(Collection<String> entries) {
+        BuildNode root = new BuildNode();
+        int size = 0;
+        for (String entry : entries) {
+            String domain = entry.toLowerCase(Locale.ROOT);
+            byte flag = EXACT;
+            if (domain.startsWith("*.")) {
+                domain = domain.substring(2);
+                flag = SUBDOMAINS;
+            }
+            if (domain.endsWith(".")) {
+                domain = domain.substring(0, domain.length() - 1);
+            }
+            if (domain.isEmpty() || domain.startsWith(".") || domain.contains("..")) {
+                throw new IllegalArgumentException("Invalid blocklist entry: " + entry);
+            }
+            if (!StandardCharsets.US_ASCII.newEncoder().canEncode(domain)) {
+                // Email addresses only pass validation with ASCII domains
+                throw new IllegalArgumentException("Blocklist entries must be ASCII (punycode): " + entry);
+            }
+            BuildNode node = root;
+            String[] parts = domain.split("\\.");
+            for (int i = parts.length - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(parts[i], label -> new BuildNode());
+            }
+            if ((node.flags & flag) == 0) {
+                node.flags |= flag;
+                size++;
+            }
+        }
+        return flatten(root, size);
+    }
+
+    /**
+     * Flattens the build tree breadth first, so that each node's children end up next to each
+     * other in label order.
+     */
+    private static DomainBlocklist flatten(BuildNode root, int size) {
+        List<BuildNode> order = new ArrayList<>();
+        List<String> nodeLabels = new ArrayList<>();
+        ArrayDeque<BuildNode> queue = new ArrayDeque<>();
+        order.add(root);
+        nodeLabels.add("");
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            BuildNode node = queue.poll();
+            node.firstChild = order.size();
+            for (Map.Entry<String, BuildNode> child : node.children.entrySet()) {
+                order.add(child.getValue());
+                nodeLabels.add(child.getKey());
+                queue.add(child.getValue());
+            }
+        }
+
+        int count = order.size();
+        int[] firstChild = new int[count];
+        int[] childCount = new int[count];
+        int[] labelStart = new int[count];
+        int[] labelLength = new int[count];
+        byte[] flags = new byte[count];
+        Map<String, Integer> pooled = new HashMap<>();
+        StringBuilder pool = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            BuildNode node = order.get(i);
+            String label = nodeLabels.get(i);
+            Integer start = pooled.get(label);
+            if (start == null) {
+                start = pool.length();
+                pool.append(label);
+                pooled.put(label, start);
+            }
+            firstChild[i] = node.firstChild;
+            childCount[i] = node.children.size();
+            labelStart[i] = start;
+            labelLength[i] = label.length();
+            flags[i] = node.flags;
+        }
+        byte[] labels = pool.toString().getBytes(StandardCharsets.US_ASCII);
+        return new DomainBlocklist(firstChild, childCount, labelStart, labelLength, flags, labels, size);
+    }
+
+    public boolean isBlocked(String domain) {
+        return domain != null && isBlocked(domain, 0, domain.length());
+    }
+
+    /**
+     * Whether the domain in {@code text[from, to)} is blocked, e.g. the part of an email
+     * address after the {@code @}.
+     */
+    public boolean isBlocked(CharSequence text, int from, int to) {
+        if (to > from && text.charAt(to - 1) == '.') {
+            to--;
+        }
+        int node = 0;
+        int end = to;
+        while (end > from) {
+            int start = end - 1;
+            while (start >= from && text.charAt(start) != '.') {
+                start--;
+            }
+            node = findChild(node, text, start + 1, end);
+            if (node < 0) {
+                return false;
+            }
+            end = start;
+            if (end > from && (flags[node] & SUBDOMAINS) != 0) {
+                return true;
+            }
+        }
+        return node != 0 && (flags[node] & EXACT) != 0;
+    }
+
+    /**
+     * Number of distinct entries, counting {@code example.com} and {@code *.example.com}
+     * separately.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int findChild(int node, CharSequence text, int from, int to) {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareLabel(mid, text, from, to);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareLabel(int node, CharSequence text, int from, int to) {
+        int start = labelStart[node];
+        int length = labelLength[node];
+        int n = Math.min(length, to - from);
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(from + i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            if (labels[start + i] != c) {
+                return labels[start + i] - c;
+            }
+        }
+        return length - (to - from);
+    }
+
+    private static final class BuildNode {
+        private final TreeMap<String, BuildNode> children = new TreeMap<>();
+        private byte flags;
+        private int firstChild;
+    }
+}
@@ -0,0 +1,154 @@
+package nl.blitz.userregistration;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * A single mutation of the registration state, as written to the {@link RegistrationJournal}.
+ */
+public class JournalEntry {
+    public enum Type {
+        USER_CREATED,
+        USER_ACTIVATED,
+        TOKEN_CREATED,
+        TOKEN_USED,
+        USER_REMOVED,
+        TOKEN_SPENT
+    }
+
+    private final Type type;
+    private final String key;
+    private final String value;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime expiresAt;
+    private final boolean flag;
+
+    private JournalEntry(Type type, String key, String value,
+                         LocalDateTime createdAt, LocalDateTime expiresAt, boolean flag) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+        this.flag = flag;
+    }
+
+    public static JournalEntry userCreated(User user) {
+        return new JournalEntry(Type.USER_CREATED, user.getEmail(), user.getHashedPassword(),
+                user.getRegistrationDate(), null, false);
+    }
+
+    public static JournalEntry userActivated(String email, boolean activated) {
+        return new JournalEntry(Type.USER_ACTIVATED, email, null, null, null, activated);
+    }
+
+    /**
+     * The user and their stored tokens moved out of this registration, e.g. to another shard.
+     */
+    public static JournalEntry userRemoved(String email) {
+        return new JournalEntry(Type.USER_REMOVED, email, null, null, null, false);
+    }
+
+    public static JournalEntry tokenCreated(VerificationToken token) {
+        return new JournalEntry(Type.TOKEN_CREATED, token.getToken(), token.getEmail(),
+                token.getCreatedAt(), token.getExpiresAt(), false);
+    }
+
+    /**
+     * A signed token was spent. Signed tokens are not stored, so only the nonce and expiry
+     * needed to reject it again are journaled.
+     */
+    public static JournalEntry tokenSpent(long nonce, Instant expiresAt) {
+        return new JournalEntry(Type.TOKEN_SPENT, Long.toString(nonce), null, null,
+                LocalDateTime.ofInstant(expiresAt, ZoneOffset.UTC), false);
+    }
+
+    public static JournalEntry tokenUsed(String token, boolean used) {
+        return new JournalEntry(Type.TOKEN_USED, token, null, null, null, used);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The email address for user entries, the token value for token entries, the nonce for
+     * {@code TOKEN_SPENT}.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The hashed password for {@code USER_CREATED}, the email address for {@code TOKEN_CREATED}.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * The activated flag for {@code USER_ACTIVATED}, the used flag for {@code TOKEN_USED}.
+     */
+    public boolean getFlag() {
+        return flag;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        writeString(out, key);
+        writeString(out, value);
+        writeDateTime(out, createdAt);
+        writeDateTime(out, expiresAt);
+        out.writeBoolean(flag);
+    }
+
+    static JournalEntry readFrom(DataInputStream in) throws IOException {
+        Type type = Type.values()[in.readUnsignedByte()];
+        String key = readString(in);
+        String value = readString(in);
+        LocalDateTime createdAt = readDateTime(in);
+        LocalDateTime expiresAt = readDateTime(in);
+        boolean flag = in.readBoolean();
+        return new JournalEntry(type, key, value, createdAt, expiresAt, flag);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDateTime(DataOutputStream out, LocalDateTime dateTime) throws IOException {
+        out.writeBoolean(dateTime != null);
+        if (dateTime != null) {
+            out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(dateTime.getNano());
+        }
+    }
+
+    private static LocalDateTime readDateTime(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long epochSecond = in.readLong();
+        int nano = in.readInt();
+        return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,116 @@
+package nl.blitz.userregistration;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Keyed token-bucket rate limiter.
+ *
+ * Each bucket is a single {@code long}: the theoretical arrival time of the next request
+ * (the generic cell rate algorithm). Refill is implicit in the passage of time, so there is
+ * no timer per key and an acquire is one map lookup plus one CAS. A bucket whose arrival
+ * time lies in the past is full, which is the same as having no entry at all, so such
+ * entries are swept out to keep the map proportional to the active keys. The sweep is
+ * incremental: every {@code SWEEP_INTERVAL}th acquire examines at most {@code SWEEP_BATCH}
+ * entries from where the previous one stopped, so no request pays for a pass over all keys.
+ * A swept bucket is first retired by a CAS to {@code RETIRED} and only then unmapped; an
+ * acquire that fetched it just before sees the tombstone and retries with a fresh bucket.
+ */
+public class RateLimiter {
+    private static final int SWEEP_INTERVAL = 64;
+    private static final int SWEEP_BATCH = 64;
+    // Arrival times are kept relative to construction, so they are never negative
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier clock;
+    private final long origin;
+    private final ConcurrentMap<String, AtomicLong> buckets;
+    private final AtomicInteger acquiresSinceSweep;
+    private final AtomicBoolean sweeping;
+    // Guarded by sweeping
+    private Iterator<Map.Entry<String, AtomicLong>> sweepCursor;
+
+    /**
+     * @param capacity       the maximum number of requests allowed in a burst
+     * @param refillInterval the time it takes to refill a single token
+     */
+    public RateLimiter(int capacity, Duration refillInterval) {
+        this(capacity, refillInterval, System::nanoTime);
+    }
+
+    RateLimiter(int capacity, Duration refillInterval, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.emissionIntervalNanos = refillInterval.toNanos();
+        this.burstToleranceNanos = emissionIntervalNanos * (capacity - 1);
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+        this.buckets = new ConcurrentHashMap<>();
+        this.acquiresSinceSweep = new AtomicInteger();
+        this.sweeping = new AtomicBoolean();
+    }
+
+    public boolean tryAcquire(String key) {
+        long now = clock.getAsLong() - origin;
+        if ((acquiresSinceSweep.incrementAndGet() & (SWEEP_INTERVAL - 1)) == 0) {
+            sweepSome(now);
+        }
+
+        while (true) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+            }
+            long arrival;
+            while ((arrival = bucket.get()) != RETIRED) {
+                long start = arrival - now > 0 ? arrival : now;
+                if (start - now > burstToleranceNanos) {
+                    return false;
+                }
+                if (bucket.compareAndSet(arrival, start + emissionIntervalNanos)) {
+                    return true;
+                }
+            }
+            // Swept under us; make sure the tombstone is gone and start from a fresh bucket
+            buckets.remove(key, bucket);
+        }
+    }
+
+    /**
+     * Number of keys currently tracked.
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    private void sweepSome(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (sweepCursor == null || !sweepCursor.hasNext()) {
+                sweepCursor = buckets.entrySet().iterator();
+            }
+            for (int i = 0; i < SWEEP_BATCH && sweepCursor.hasNext(); i++) {
+                Map.Entry<String, AtomicLong> entry = sweepCursor.next();
+                AtomicLong bucket = entry.getValue();
+                long arrival = bucket.get();
+                if (arrival != RETIRED && arrival - now <= 0 && bucket.compareAndSet(arrival, RETIRED)) {
+                    buckets.remove(entry.getKey(), bucket);
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
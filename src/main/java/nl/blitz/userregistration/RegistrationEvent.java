@@ -0,0 +1,40 @@
+package nl.blitz.userregistration;
+
+import java.time.LocalDateTime;
+
+public class RegistrationEvent {
+    public enum Type {
+        REGISTERED,
+        TOKEN_GENERATED,
+        ACTIVATED,
+        VALIDATION_FAILED
+    }
+
+    private final Type type;
+    private final String email;
+    private final String message;
+    private final LocalDateTime timestamp;
+
+    public RegistrationEvent(Type type, String email, String message, LocalDateTime timestamp) {
+        this.type = type;
+        this.email = email;
+        this.message = message;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,235 @@
+package nl.blitz.userregistration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Publish/subscribe feed of {@link RegistrationEvent}s.
+ *
+ * Every subscriber gets its own bounded buffer and is only sent as many items as it has
+ * requested; delivery runs on the feed's executor, never on the registering thread. When a
+ * subscriber falls so far behind that its buffer is full, new events for that subscriber are
+ * dropped and counted instead of blocking registration or growing memory.
+ *
+ * {@link #batches(int)} exposes the same feed as lists of up to {@code maxBatchSize} events,
+ * where one unit of demand delivers one batch of whatever is buffered.
+ */
+public class RegistrationEventFeed implements Flow.Publisher<RegistrationEvent>, AutoCloseable {
+    private static final Logger logger = Logger.getLogger(RegistrationEventFeed.class.getName());
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 1024;
+
+    private final Executor executor;
+    private final int bufferCapacity;
+    private final List<FeedSubscription<?>> subscriptions;
+    private final AtomicLong droppedEvents;
+    private volatile boolean closed;
+
+    public RegistrationEventFeed() {
+        this(ForkJoinPool.commonPool(), DEFAULT_BUFFER_CAPACITY);
+    }
+
+    public RegistrationEventFeed(Executor executor, int bufferCapacity) {
+        if (bufferCapacity < 1) {
+            throw new IllegalArgumentException("bufferCapacity must be at least 1");
+        }
+        this.executor = executor;
+        this.bufferCapacity = bufferCapacity;
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.droppedEvents = new AtomicLong();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super RegistrationEvent> subscriber) {
+        register(new FeedSubscription<RegistrationEvent>(subscriber, 1) {
+            @Override
+            RegistrationEvent next(BlockingQueue<RegistrationEvent> buffer) {
+                return buffer.poll();
+            }
+        });
+    }
+
+    /**
+     * Returns a view of this feed that delivers events in batches of at most
+     * {@code maxBatchSize}.
+     */
+    public Flow.Publisher<List<RegistrationEvent>> batches(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        return subscriber -> register(new FeedSubscription<List<RegistrationEvent>>(subscriber, maxBatchSize) {
+            @Override
+            List<RegistrationEvent> next(BlockingQueue<RegistrationEvent> buffer) {
+                List<RegistrationEvent> batch = new ArrayList<>(Math.min(maxBatchSize, buffer.size()));
+                buffer.drainTo(batch, maxBatchSize);
+                return batch.isEmpty() ? null : batch;
+            }
+        });
+    }
+
+    public void publish(RegistrationEvent event) {
+        for (FeedSubscription<?> subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Number of events dropped across all subscribers because their buffer was full.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Completes every subscriber once its buffered events have been delivered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (FeedSubscription<?> subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private void register(FeedSubscription<?> subscription) {
+        subscription.subscriber.onSubscribe(subscription);
+        if (closed) {
+            subscription.complete();
+            return;
+        }
+        subscriptions.add(subscription);
+    }
+
+    private abstract class FeedSubscription<T> implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final BlockingQueue<RegistrationEvent> buffer;
+        private final AtomicLong demand;
+        private final AtomicInteger wip;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        FeedSubscription(Flow.Subscriber<? super T> subscriber, int batchSize) {
+            this.subscriber = subscriber;
+            this.buffer = new ArrayBlockingQueue<>(Math.max(bufferCapacity, batchSize));
+            this.demand = new AtomicLong();
+            this.wip = new AtomicInteger();
+        }
+
+        /**
+         * Takes the next item to deliver from the buffer, or null if it is empty.
+         */
+        abstract T next(BlockingQueue<RegistrationEvent> buffer);
+
+        void offer(RegistrationEvent event) {
+            if (done || cancelled) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                long dropped = droppedEvents.incrementAndGet();
+                if (dropped == 1 || dropped % bufferCapacity == 0) {
+                    logger.warning("Registration event subscriber is lagging, dropped events: " + dropped);
+                }
+                return;
+            }
+            schedule();
+        }
+
+        void complete() {
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested demand must be positive, was " + n);
+                done = true;
+            } else {
+                demand.getAndUpdate(current -> {
+                    long updated = current + n;
+                    return updated < 0 ? Long.MAX_VALUE : updated;
+                });
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            buffer.clear();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted != requested) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (error != null) {
+                        terminate();
+                        return;
+                    }
+                    boolean isDone = done;
+                    T item = next(buffer);
+                    if (item == null) {
+                        if (isDone) {
+                            terminate();
+                            return;
+                        }
+                        break;
+                    }
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (cancelled) {
+                    return;
+                }
+                if (error != null || (done && buffer.isEmpty())) {
+                    terminate();
+                    return;
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void terminate() {
+            cancelled = true;
+            subscriptions.remove(this);
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
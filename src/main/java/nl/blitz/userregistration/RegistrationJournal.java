@@ -0,0 +1,357 @@
+package nl.blitz.userregistration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind, append-only journal for registration mutations.
+ *
+ * Appends are buffered in memory and group-committed by a single writer thread: a batch is
+ * written and forced to disk once it reaches {@code maxBatchSize} entries or once the oldest
+ * entry in it has waited {@code maxLatency}, whichever comes first. Each append returns a future
+ * that completes when the entry is durable, so callers only wait for the fsync when they need to.
+ *
+ * Records are framed as {@code [length][crc32][payload]}; a torn record at the tail (e.g. after
+ * a crash in the middle of a write) is detected on open and truncated away. A batch whose write
+ * or fsync fails is truncated away at once, so that later batches are never appended behind a
+ * torn record; if even that fails, the journal rejects all further appends. Either way the next
+ * {@link #sync} fails too, since not everything appended before it made it to disk.
+ */
+public class RegistrationJournal implements Closeable {
+    private static final Logger logger = Logger.getLogger(RegistrationJournal.class.getName());
+
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final Pending SHUTDOWN = new Pending(null, null);
+
+    private final FileChannel channel;
+    private final long maxLatencyNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private final BatchWriter batchWriter;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    // Only touched by the writer thread: the last failed batch not yet reported to a sync
+    private IOException lostSinceSync;
+
+    public RegistrationJournal(Path file, Duration maxLatency, int maxBatchSize) throws IOException {
+        this(file, maxLatency, maxBatchSize, FileChannel::write);
+    }
+
+    RegistrationJournal(Path file, Duration maxLatency, int maxBatchSize, BatchWriter batchWriter)
+            throws IOException {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.maxLatencyNanos = maxLatency.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>();
+        this.batchWriter = batchWriter;
+
+        long validEnd = scan(null);
+        if (validEnd < channel.size()) {
+            logger.warning("Truncating torn journal tail at offset " + validEnd + " of " + file);
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+
+        this.writer = new Thread(this::runWriter, "registration-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Buffers an entry for the next group commit.
+     *
+     * @return a future that completes once the entry has been forced to disk
+     */
+    public CompletableFuture<Void> append(JournalEntry entry) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        if (closed) {
+            durable.completeExceptionally(new IllegalStateException("Journal is closed"));
+            return durable;
+        }
+        if (failure != null) {
+            durable.completeExceptionally(new IllegalStateException("Journal has failed", failure));
+            return durable;
+        }
+        queue.add(new Pending(encode(entry), durable));
+        return durable;
+    }
+
+    /**
+     * Forces a commit of everything appended so far without waiting for {@code maxLatency}.
+     *
+     * @return a future that completes once all earlier appends are durable, or fails if a batch
+     *         was lost since the previous sync
+     */
+    public CompletableFuture<Void> sync() {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        if (closed) {
+            durable.complete(null);
+            return durable;
+        }
+        queue.add(new Pending(null, durable));
+        return durable;
+    }
+
+    /**
+     * Replays every committed entry in append order. Intended to be called once on startup,
+     * before the first {@link #append}.
+     */
+    public void replay(Consumer<JournalEntry> consumer) throws IOException {
+        scan(consumer);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(SHUTDOWN);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending late;
+        while ((late = queue.poll()) != null) {
+            if (late.durable != null) {
+                late.durable.completeExceptionally(new IllegalStateException("Journal is closed"));
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long scan(Consumer<JournalEntry> consumer) throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        while (offset + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || offset + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + HEADER_SIZE);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            if (consumer != null) {
+                consumer.accept(JournalEntry.readFrom(
+                        new DataInputStream(new ByteArrayInputStream(payload.array()))));
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+        }
+    }
+
+    private static byte[] encode(JournalEntry entry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            entry.writeTo(out);
+            out.flush();
+
+            byte[] record = bytes.toByteArray();
+            int length = record.length - HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            crc.update(record, HEADER_SIZE, length);
+            ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                Pending first = queue.take();
+                batch.add(first);
+                running = collectBatch(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Drains further entries into the batch until it is full, its latency budget is spent or a
+     * sync/shutdown marker asks for an immediate commit.
+     *
+     * @return false if the shutdown marker was seen
+     */
+    private boolean collectBatch(List<Pending> batch) throws InterruptedException {
+        Pending last = batch.get(batch.size() - 1);
+        if (last == SHUTDOWN) {
+            return false;
+        }
+        if (last.record == null) {
+            return true;
+        }
+        long deadline = System.nanoTime() + maxLatencyNanos;
+        int records = 1;
+        while (records < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                return true;
+            }
+            batch.add(next);
+            if (next == SHUTDOWN) {
+                return false;
+            }
+            if (next.record == null) {
+                return true;
+            }
+            records++;
+        }
+        return true;
+    }
+
+    private void commit(List<Pending> batch) {
+        long start = -1;
+        try {
+            if (failure != null) {
+                throw new IOException("Journal has failed", failure);
+            }
+            List<ByteBuffer> buffers = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                if (pending.record != null) {
+                    buffers.add(ByteBuffer.wrap(pending.record));
+                }
+            }
+            if (!buffers.isEmpty()) {
+                start = channel.position();
+                ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+                long remaining = 0;
+                for (ByteBuffer buffer : array) {
+                    remaining += buffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= batchWriter.write(channel, array);
+                }
+                channel.force(false);
+            }
+            for (Pending pending : batch) {
+                if (pending.durable == null) {
+                    continue;
+                }
+                if (pending.record == null && lostSinceSync != null) {
+                    pending.durable.completeExceptionally(
+                            new IOException("Entries appended before this sync were lost", lostSinceSync));
+                } else {
+                    pending.durable.complete(null);
+                }
+            }
+            if (batch.stream().anyMatch(pending -> pending.record == null)) {
+                lostSinceSync = null;
+            }
+        } catch (IOException e) {
+            fail(batch, start, e);
+        } catch (RuntimeException e) {
+            // Left uncaught this would kill the writer and leave every pending future hanging
+            fail(batch, start, new IOException("Journal commit failed", e));
+        }
+    }
+
+    private void fail(List<Pending> batch, long start, IOException cause) {
+        logger.log(Level.SEVERE, "Journal commit failed", cause);
+        if (start >= 0) {
+            rollBack(start, cause);
+        }
+        lostSinceSync = cause;
+        for (Pending pending : batch) {
+            if (pending.durable != null) {
+                pending.durable.completeExceptionally(cause);
+            }
+        }
+        if (batch.stream().anyMatch(pending -> pending.record == null)) {
+            // The syncs in this batch have just reported the loss themselves
+            lostSinceSync = null;
+        }
+    }
+
+    /**
+     * Cuts a failed batch off the end of the file. None of its entries were acknowledged, and
+     * leaving part of it in place would hide every later batch from {@link #scan}.
+     */
+    private void rollBack(long start, IOException cause) {
+        try {
+            channel.truncate(start);
+            channel.position(start);
+            channel.force(true);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+            logger.log(Level.SEVERE, "Could not roll back failed journal batch; rejecting further appends", e);
+        }
+    }
+
+    /**
+     * Writes a batch of records to the journal file; a seam for injecting failed writes in tests.
+     */
+    interface BatchWriter {
+        long write(FileChannel channel, ByteBuffer[] records) throws IOException;
+    }
+
+    private static final class Pending {
+        private final byte[] record;
+        private final CompletableFuture<Void> durable;
+
+        private Pending(byte[] record, CompletableFuture<Void> durable) {
+            this.record = record;
+            this.durable = durable;
+        }
+    }
+}
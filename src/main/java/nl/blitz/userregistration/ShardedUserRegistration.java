@@ -0,0 +1,533 @@
+package nl.blitz.userregistration;
+
+import nl.blitz.util.Hashing;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * {@link UserRegistrationService} that partitions users over several {@link UserRegistration}
+ * nodes by a consistent hash of the normalized email.
+ *
+ * Each node owns {@code virtualNodes} points on a 64-bit hash ring; an email belongs to the
+ * node owning the first point at or after its hash. Adding or removing a node therefore only
+ * moves the users in the ring segments it gains or loses, and the moved users, tokens and
+ * activation state are transferred while the service stays up. Operations on one email are
+ * routed to its owner; {@link #getAllUsers()}, {@link #getRegistrationLogs()} and token
+ * lookups scatter over all nodes and gather the results.
+ *
+ * A rebalance switches the ring first and then moves users in batches, each under the write
+ * lock; operations hold the read lock, so they never see a half-moved user but only wait for
+ * one batch. Until the rebalance is done, an operation on a user who has not moved yet is
+ * forwarded to the user's previous owner.
+ */
+public class ShardedUserRegistration implements UserRegistrationService {
+    private static final Logger logger = Logger.getLogger(ShardedUserRegistration.class.getName());
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+    public static final int DEFAULT_TRANSFER_BATCH_SIZE = 256;
+
+    private static final Comparator<String> BY_LOG_TIMESTAMP =
+            Comparator.comparing(entry -> entry.substring(0, Math.max(0, entry.indexOf(']'))));
+
+    private final int virtualNodes;
+    private final int transferBatchSize;
+    private final Map<String, UserRegistration> nodes;
+    private final TreeMap<Long, UserRegistration> ring;
+    private final ReadWriteLock lock;
+    private final Lock rebalanceLock;
+    // The ring before the running rebalance, or null
+    private TreeMap<Long, UserRegistration> previousRing;
+    private volatile TokenSigner tokenSigner;
+    private volatile BreachedPasswordScreen passwordScreen;
+    private volatile DomainBlocklist domainBlocklist;
+    private volatile AdmissionControl admissionControl;
+    private volatile Clock clock;
+    private volatile String lastVerificationEmailSentTo;
+    private volatile String lastWelcomeEmailSentTo;
+
+    public ShardedUserRegistration() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardedUserRegistration(int virtualNodes) {
+        this(virtualNodes, DEFAULT_TRANSFER_BATCH_SIZE);
+    }
+
+    ShardedUserRegistration(int virtualNodes, int transferBatchSize) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be at least 1: " + virtualNodes);
+        }
+        if (transferBatchSize < 1) {
+            throw new IllegalArgumentException("transferBatchSize must be at least 1: " + transferBatchSize);
+        }
+        this.virtualNodes = virtualNodes;
+        this.transferBatchSize = transferBatchSize;
+        this.nodes = new LinkedHashMap<>();
+        this.ring = new TreeMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.rebalanceLock = new ReentrantLock();
+    }
+
+    /**
+     * Adds a node and moves the users whose emails now hash to it from the other nodes. The
+     * node gets this service's token signer, password screen, domain blocklist, admission
+     * control and clock, if set. If a user cannot be moved, the node is taken out again and
+     * the exception is rethrown.
+     */
+    public void addNode(String nodeId, UserRegistration node) {
+        rebalanceLock.lock();
+        try {
+            finishRebalance();
+            lock.writeLock().lock();
+            try {
+                if (nodes.containsKey(nodeId) || nodes.containsValue(node)) {
+                    throw new IllegalArgumentException("Node is already part of the ring: " + nodeId);
+                }
+                configure(node);
+                nodes.put(nodeId, node);
+                // The first node has nobody to take users from
+                previousRing = ring.isEmpty() ? null : new TreeMap<>(ring);
+                for (int i = 0; i < virtualNodes; i++) {
+                    ring.put(hash(nodeId + "#" + i), node);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            int moved = rebalance();
+            logger.info("Added registration node " + nodeId + ", moved " + moved + " users to it");
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a node after moving all of its users to the nodes that now own them. If a user
+     * cannot be moved, the node keeps its place in the ring and the exception is rethrown.
+     *
+     * @return the removed node, or null if there was no such node
+     */
+    public UserRegistration removeNode(String nodeId) {
+        rebalanceLock.lock();
+        try {
+            finishRebalance();
+            UserRegistration node;
+            lock.writeLock().lock();
+            try {
+                node = nodes.get(nodeId);
+                if (node == null) {
+                    return null;
+                }
+                if (nodes.size() == 1) {
+                    throw new IllegalStateException("Cannot remove the last registration node: " + nodeId);
+                }
+                // The node stays in nodes, without ring points, until it has been drained
+                previousRing = new TreeMap<>(ring);
+                ring.values().removeIf(owner -> owner == node);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            int moved = rebalance();
+            logger.info("Removed registration node " + nodeId + ", moved " + moved + " users from it");
+            return node;
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    public Set<String> getNodeIds() {
+        return read(() -> Collections.unmodifiableSet(new LinkedHashSet<>(nodes.keySet())));
+    }
+
+    /**
+     * The node that owns the given email.
+     */
+    public UserRegistration getNodeFor(String email) {
+        return read(() -> route(email));
+    }
+
+    /**
+     * Sets the signer on every node, current and future. Nodes must share the signer so that a
+     * token stays valid after its user moves to another node.
+     */
+    public void setTokenSigner(TokenSigner tokenSigner) {
+        lock.writeLock().lock();
+        try {
+            this.tokenSigner = tokenSigner;
+            nodes.values().forEach(node -> node.setTokenSigner(tokenSigner));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the breached password screen on every node, current and future.
+     */
+    public void setPasswordScreen(BreachedPasswordScreen passwordScreen) {
+        lock.writeLock().lock();
+        try {
+            this.passwordScreen = passwordScreen;
+            nodes.values().forEach(node -> node.setPasswordScreen(passwordScreen));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the email domain blocklist on every node, current and future.
+     */
+    public void setDomainBlocklist(DomainBlocklist domainBlocklist) {
+        lock.writeLock().lock();
+        try {
+            this.domainBlocklist = domainBlocklist;
+            nodes.values().forEach(node -> node.setDomainBlocklist(domainBlocklist));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the admission control on every node, current and future. The nodes share it, so its
+     * rate limits and concurrency caps apply to the service as a whole.
+     */
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        lock.writeLock().lock();
+        try {
+            this.admissionControl = admissionControl;
+            nodes.values().forEach(node -> node.setAdmissionControl(admissionControl));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the clock on every node, current and future.
+     */
+    public void setClock(Clock clock) {
+        lock.writeLock().lock();
+        try {
+            this.clock = clock;
+            nodes.values().forEach(node -> node.setClock(clock));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public RegistrationResult registerUser(String email, String password) {
+        RegistrationResult result = read(() -> route(email).registerUser(email, password));
+        if (result.isSuccess()) {
+            lastVerificationEmailSentTo = email;
+        }
+        return result;
+    }
+
+    @Override
+    public User getUserByEmail(String email) {
+        return read(() -> route(email).getUserByEmail(email));
+    }
+
+    /**
+     * Gathers the users of all nodes, oldest registration first.
+     */
+    @Override
+    public List<User> getAllUsers() {
+        return read(() -> {
+            List<User> all = new ArrayList<>();
+            for (UserRegistration node : nodes.values()) {
+                all.addAll(node.getAllUsers());
+            }
+            all.sort(Comparator.comparing(User::getRegistrationDate));
+            return all;
+        });
+    }
+
+    @Override
+    public boolean userExists(String email) {
+        return read(() -> route(email).userExists(email));
+    }
+
+    @Override
+    public boolean isValidEmail(String email) {
+        return read(() -> anyNode().isValidEmail(email));
+    }
+
+    @Override
+    public boolean isValidPassword(String password) {
+        return read(() -> anyNode().isValidPassword(password));
+    }
+
+    @Override
+    public boolean activateAccount(String email, String token) {
+        boolean activated = read(() -> route(email).activateAccount(email, token));
+        if (activated) {
+            lastWelcomeEmailSentTo = email;
+        }
+        return activated;
+    }
+
+    @Override
+    public boolean isAccountActivated(String email) {
+        return read(() -> route(email).isAccountActivated(email));
+    }
+
+    @Override
+    public String hashPassword(String password) {
+        return read(() -> anyNode().hashPassword(password));
+    }
+
+    @Override
+    public boolean verifyPassword(String password, String hashedPassword) {
+        return read(() -> anyNode().verifyPassword(password, hashedPassword));
+    }
+
+    @Override
+    public String generateVerificationToken(String email) {
+        return read(() -> route(email).generateVerificationToken(email));
+    }
+
+    /**
+     * Asks every node for the token, since a token does not reveal which email it was issued
+     * for.
+     */
+    @Override
+    public VerificationToken getVerificationToken(String token) {
+        return read(() -> {
+            for (UserRegistration node : nodes.values()) {
+                VerificationToken verificationToken = node.getVerificationToken(token);
+                if (verificationToken != null) {
+                    return verificationToken;
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean verifyToken(String token, String email) {
+        return read(() -> route(email).verifyToken(token, email));
+    }
+
+    @Override
+    public void sendVerificationEmail(String email, String token) {
+        read(() -> {
+            route(email).sendVerificationEmail(email, token);
+            return null;
+        });
+        lastVerificationEmailSentTo = email;
+    }
+
+    @Override
+    public void sendWelcomeEmail(String email) {
+        boolean sent = read(() -> {
+            UserRegistration owner = route(email);
+            owner.sendWelcomeEmail(email);
+            return owner.userExists(email);
+        });
+        if (sent) {
+            lastWelcomeEmailSentTo = email;
+        }
+    }
+
+    @Override
+    public String getLastVerificationEmailSentTo() {
+        return lastVerificationEmailSentTo;
+    }
+
+    @Override
+    public String getLastWelcomeEmailSentTo() {
+        return lastWelcomeEmailSentTo;
+    }
+
+    @Override
+    public void initializeUserProfile(User user) {
+        read(() -> {
+            anyNode().initializeUserProfile(user);
+            return null;
+        });
+    }
+
+    /**
+     * Gathers the logs of all nodes, ordered by timestamp.
+     */
+    @Override
+    public List<String> getRegistrationLogs() {
+        return read(() -> {
+            List<String> logs = new ArrayList<>();
+            for (UserRegistration node : nodes.values()) {
+                logs.addAll(node.getRegistrationLogs());
+            }
+            logs.sort(BY_LOG_TIMESTAMP);
+            return logs;
+        });
+    }
+
+    private void configure(UserRegistration node) {
+        if (tokenSigner != null) {
+            node.setTokenSigner(tokenSigner);
+        }
+        if (passwordScreen != null) {
+            node.setPasswordScreen(passwordScreen);
+        }
+        if (domainBlocklist != null) {
+            node.setDomainBlocklist(domainBlocklist);
+        }
+        if (admissionControl != null) {
+            node.setAdmissionControl(admissionControl);
+        }
+        if (clock != null) {
+            node.setClock(clock);
+        }
+    }
+
+    /**
+     * Finishes the rebalance just started or, if a user cannot be moved, puts the previous
+     * ring back and returns the users it already moved to their old owners.
+     */
+    private int rebalance() {
+        Map<UserRegistration, List<String>> movedTo = new LinkedHashMap<>();
+        try {
+            moveMisplacedUsers(movedTo);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                TreeMap<Long, UserRegistration> failed = new TreeMap<>(ring);
+                ring.clear();
+                ring.putAll(previousRing);
+                previousRing = failed;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                for (Map.Entry<UserRegistration, List<String>> moved : movedTo.entrySet()) {
+                    moveUsers(moved.getKey(), moved.getValue(), new LinkedHashMap<>());
+                }
+            } catch (RuntimeException rollbackFailure) {
+                // Leave the rebalance pending; routing still finds every user
+                e.addSuppressed(rollbackFailure);
+                throw e;
+            }
+            completeRebalance();
+            throw e;
+        }
+        completeRebalance();
+        return movedTo.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * Completes a rebalance that an earlier failure left pending, if any.
+     */
+    private void finishRebalance() {
+        if (previousRing != null) {
+            moveMisplacedUsers(new LinkedHashMap<>());
+            completeRebalance();
+        }
+    }
+
+    /**
+     * Moves every user that is not on its owner, recording who went where in {@code movedTo}.
+     */
+    private void moveMisplacedUsers(Map<UserRegistration, List<String>> movedTo) {
+        if (previousRing == null) {
+            return;
+        }
+        for (UserRegistration source : read(() -> new ArrayList<>(nodes.values()))) {
+            List<String> emails = read(() -> {
+                List<String> misplaced = new ArrayList<>();
+                for (User user : source.getAllUsers()) {
+                    String email = user.getEmail().toLowerCase(Locale.ROOT);
+                    if (ownerOf(email) != source) {
+                        misplaced.add(email);
+                    }
+                }
+                return misplaced;
+            });
+            moveUsers(source, emails, movedTo);
+        }
+    }
+
+    private void moveUsers(UserRegistration source, List<String> emails, Map<UserRegistration, List<String>> movedTo) {
+        for (int from = 0; from < emails.size(); from += transferBatchSize) {
+            List<String> batch = emails.subList(from, Math.min(emails.size(), from + transferBatchSize));
+            lock.writeLock().lock();
+            try {
+                for (String email : source.transferUsers(batch, this::ownerOf)) {
+                    movedTo.computeIfAbsent(ownerOf(email), target -> new ArrayList<>()).add(email);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Forgets the previous ring and the nodes that no longer own any of the ring.
+     */
+    private void completeRebalance() {
+        lock.writeLock().lock();
+        try {
+            previousRing = null;
+            nodes.values().removeIf(node -> !ring.containsValue(node));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private <T> T read(Supplier<T> operation) {
+        lock.readLock().lock();
+        try {
+            return operation.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private UserRegistration anyNode() {
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("No registration nodes");
+        }
+        return ring.firstEntry().getValue();
+    }
+
+    private UserRegistration route(String email) {
+        anyNode();
+        String normalized = email == null ? "" : email.toLowerCase(Locale.ROOT);
+        UserRegistration owner = ownerOf(normalized);
+        if (previousRing != null) {
+            // Mid-rebalance, a user is on the new owner or still on the previous one
+            UserRegistration previous = ownerOf(previousRing, normalized);
+            if (previous != owner && previous.userExists(normalized)) {
+                return previous;
+            }
+        }
+        return owner;
+    }
+
+    private UserRegistration ownerOf(String normalizedEmail) {
+        return ownerOf(ring, normalizedEmail);
+    }
+
+    private static UserRegistration ownerOf(TreeMap<Long, UserRegistration> ring, String normalizedEmail) {
+        Map.Entry<Long, UserRegistration> entry = ring.ceilingEntry(hash(normalizedEmail));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(String key) {
+        return Hashing.hash64(key, 0);
+    }
+}
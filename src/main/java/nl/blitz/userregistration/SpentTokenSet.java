@@ -0,0 +1,158 @@
+package nl.blitz.userregistration;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Remembers the nonces of spent signed tokens until those tokens expire.
+ *
+ * Nonces are kept in open-addressing long sets, one per hour of token expiry. Once an hour
+ * has passed, every token in its bucket is expired and rejected on that ground alone, so the
+ * whole bucket is dropped at once. Memory is therefore bounded by the tokens spent within one
+ * expiry window, at 8 to 16 bytes per token.
+ */
+public class SpentTokenSet {
+    private static final long BUCKET_SECONDS = 3600;
+
+    private final ConcurrentSkipListMap<Long, LongSet> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * Marks a token as spent.
+     *
+     * @return false if it had already been spent
+     */
+    public boolean markSpent(long nonce, Instant expiresAt, Instant now) {
+        purgeExpired(now);
+        LongSet bucket = buckets.computeIfAbsent(bucketOf(expiresAt), key -> new LongSet());
+        return bucket.add(nonce);
+    }
+
+    public boolean isSpent(long nonce, Instant expiresAt) {
+        LongSet bucket = buckets.get(bucketOf(expiresAt));
+        return bucket != null && bucket.contains(nonce);
+    }
+
+    /**
+     * Passes every nonce whose token may not have expired by {@code now} to {@code consumer},
+     * with an expiry in the same hour as that of the spent token, which is all
+     * {@link #isSpent} looks at.
+     */
+    public void forEach(Instant now, SpentTokenConsumer consumer) {
+        long current = Math.floorDiv(now.getEpochSecond(), BUCKET_SECONDS);
+        for (Map.Entry<Long, LongSet> bucket : buckets.tailMap(current).entrySet()) {
+            Instant expiresAt = Instant.ofEpochSecond(bucket.getKey() * BUCKET_SECONDS);
+            for (long nonce : bucket.getValue().toArray()) {
+                consumer.accept(nonce, expiresAt);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (LongSet bucket : buckets.values()) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    private void purgeExpired(Instant now) {
+        // A bucket holds tokens expiring before its end; they are all expired once it has passed
+        long current = Math.floorDiv(now.getEpochSecond(), BUCKET_SECONDS);
+        Map.Entry<Long, LongSet> oldest;
+        while ((oldest = buckets.firstEntry()) != null && oldest.getKey() < current) {
+            buckets.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private static long bucketOf(Instant expiresAt) {
+        return Math.floorDiv(expiresAt.getEpochSecond(), BUCKET_SECONDS);
+    }
+
+    public interface SpentTokenConsumer {
+        void accept(long nonce, Instant expiresAt);
+    }
+
+    /**
+     * Open-addressing hash set of longs with linear probing. Zero is stored out of band.
+     */
+    private static final class LongSet {
+        private long[] slots = new long[16];
+        private int size;
+        private boolean containsZero;
+
+        synchronized boolean add(long value) {
+            if (value == 0) {
+                boolean added = !containsZero;
+                containsZero = true;
+                size += added ? 1 : 0;
+                return added;
+            }
+            if ((size + 1) * 2 > slots.length) {
+                resize();
+            }
+            int mask = slots.length - 1;
+            for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+                if (slots[i] == value) {
+                    return false;
+                }
+                if (slots[i] == 0) {
+                    slots[i] = value;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        synchronized boolean contains(long value) {
+            if (value == 0) {
+                return containsZero;
+            }
+            int mask = slots.length - 1;
+            for (int i = mix(value) & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (slots[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long[] toArray() {
+            long[] values = new long[size];
+            int n = 0;
+            if (containsZero) {
+                values[n++] = 0;
+            }
+            for (long value : slots) {
+                if (value != 0) {
+                    values[n++] = value;
+                }
+            }
+            return values;
+        }
+
+        private void resize() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            int mask = slots.length - 1;
+            for (long value : old) {
+                if (value != 0) {
+                    int i = mix(value) & mask;
+                    while (slots[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    slots[i] = value;
+                }
+            }
+        }
+
+        private static int mix(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package nl.blitz.userregistration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks self-contained verification tokens signed with HMAC-SHA256.
+ *
+ * A token carries a keyed hash of the normalized email, its creation and expiry time and a
+ * random nonce, followed by a truncated MAC over those fields, all URL-safe Base64 encoded.
+ * Any node holding the same key can check a token without shared storage. Decoding works on
+ * per-thread scratch buffers and compares MACs in constant time.
+ */
+public class TokenSigner {
+    static final String PREFIX = "VERIFY-";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int EMAIL_HASH_LENGTH = 16;
+    private static final int MAC_LENGTH = 16;
+    // version, email hash, created-at and expires-at seconds, nonce
+    private static final int PAYLOAD_LENGTH = 1 + EMAIL_HASH_LENGTH + Long.BYTES * 3;
+    private static final int TOKEN_BYTES = PAYLOAD_LENGTH + MAC_LENGTH;
+    private static final int ENCODED_LENGTH = (TOKEN_BYTES * 4 + 2) / 3;
+    private static final String BASE64_URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    private static final byte[] DECODE = new byte[128];
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < BASE64_URL.length(); i++) {
+            DECODE[BASE64_URL.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+    private final ThreadLocal<byte[]> scratch;
+
+    public TokenSigner(byte[] key) {
+        if (key.length < 32) {
+            throw new IllegalArgumentException("Signing key must be at least 32 bytes");
+        }
+        this.key = new SecretKeySpec(key.clone(), ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::newMac);
+        // Decoded token followed by the recomputed MAC
+        this.scratch = ThreadLocal.withInitial(() -> new byte[TOKEN_BYTES + 32]);
+    }
+
+    /**
+     * Generates a random 256-bit signing key. Every node that verifies tokens needs the same key.
+     */
+    public static byte[] generateKey() {
+        byte[] key = new byte[32];
+        RANDOM.nextBytes(key);
+        return key;
+    }
+
+    public String sign(String email, Instant createdAt, Instant expiresAt) {
+        byte[] token = new byte[TOKEN_BYTES];
+        token[0] = VERSION;
+        System.arraycopy(emailHash(email), 0, token, 1, EMAIL_HASH_LENGTH);
+        int offset = 1 + EMAIL_HASH_LENGTH;
+        offset = putLong(token, offset, createdAt.getEpochSecond());
+        offset = putLong(token, offset, expiresAt.getEpochSecond());
+        putLong(token, offset, RANDOM.nextLong());
+
+        Mac hmac = mac.get();
+        hmac.update(token, 0, PAYLOAD_LENGTH);
+        byte[] signature = hmac.doFinal();
+        System.arraycopy(signature, 0, token, PAYLOAD_LENGTH, MAC_LENGTH);
+        return PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * Decodes a token and checks its signature.
+     *
+     * @return the token's fields, or null if it is malformed or not signed with this key
+     */
+    public SignedToken decode(String token) {
+        if (token == null || token.length() != PREFIX.length() + ENCODED_LENGTH || !token.startsWith(PREFIX)) {
+            return null;
+        }
+        byte[] buffer = scratch.get();
+        if (!decodeBase64(token, PREFIX.length(), buffer) || buffer[0] != VERSION) {
+            return null;
+        }
+
+        Mac hmac = mac.get();
+        hmac.update(buffer, 0, PAYLOAD_LENGTH);
+        try {
+            hmac.doFinal(buffer, TOKEN_BYTES);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        int diff = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            diff |= buffer[PAYLOAD_LENGTH + i] ^ buffer[TOKEN_BYTES + i];
+        }
+        if (diff != 0) {
+            return null;
+        }
+
+        int offset = 1 + EMAIL_HASH_LENGTH;
+        return new SignedToken(Arrays.copyOfRange(buffer, 1, 1 + EMAIL_HASH_LENGTH),
+                getLong(buffer, offset), getLong(buffer, offset + 8), getLong(buffer, offset + 16));
+    }
+
+    /**
+     * Whether the token was issued for {@code email}, compared in constant time.
+     */
+    public boolean isIssuedFor(SignedToken token, String email) {
+        return email != null && MessageDigest.isEqual(token.emailHash, emailHash(email));
+    }
+
+    /**
+     * Map key for the keyed email hash carried in tokens, so the owner of a token can be found
+     * without comparing it against every user.
+     */
+    ByteBuffer emailKey(String email) {
+        return ByteBuffer.wrap(emailHash(email)).asReadOnlyBuffer();
+    }
+
+    private byte[] emailHash(String email) {
+        Mac hmac = mac.get();
+        // Domain-separate the email hash from the token MAC computed with the same key
+        hmac.update((byte) 0);
+        byte[] hash = hmac.doFinal(email.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+        return Arrays.copyOf(hash, EMAIL_HASH_LENGTH);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac hmac = Mac.getInstance(ALGORITHM);
+            hmac.init(key);
+            return hmac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    private static boolean decodeBase64(String token, int start, byte[] out) {
+        int bits = 0;
+        int bitCount = 0;
+        int written = 0;
+        for (int i = start; i < token.length(); i++) {
+            char c = token.charAt(i);
+            int value = c < DECODE.length ? DECODE[c] : -1;
+            if (value < 0) {
+                return false;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[written++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return written == TOKEN_BYTES;
+    }
+
+    private static int putLong(byte[] buffer, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+        return offset + 8;
+    }
+
+    private static long getLong(byte[] buffer, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Fields of a token whose signature checked out.
+     */
+    public static final class SignedToken {
+        private final byte[] emailHash;
+        private final long createdAt;
+        private final long expiresAt;
+        private final long nonce;
+
+        private SignedToken(byte[] emailHash, long createdAt, long expiresAt, long nonce) {
+            this.emailHash = emailHash;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.nonce = nonce;
+        }
+
+        public Instant getCreatedAt() {
+            return Instant.ofEpochSecond(createdAt);
+        }
+
+        public Instant getExpiresAt() {
+            return Instant.ofEpochSecond(expiresAt);
+        }
+
+        public long getNonce() {
+            return nonce;
+        }
+
+        ByteBuffer getEmailKey() {
+            return ByteBuffer.wrap(emailHash).asReadOnlyBuffer();
+        }
+    }
+}
@@ -6,15 +6,21 @@ public class User {
     private final String email;
     private final String hashedPassword;
     private final LocalDateTime registrationDate;
-    private boolean activated;
-    private String profileLanguage;
-    private String profileTimezone;
+    private volatile boolean activated;
+    private volatile String profileLanguage;
+    private volatile String profileTimezone;
     private boolean emailNotificationsEnabled;
+    private UserIndex index;
+    private int ordinal = -1;
 
     public User(String email, String hashedPassword) {
+        this(email, hashedPassword, LocalDateTime.now());
+    }
+
+    public User(String email, String hashedPassword, LocalDateTime registrationDate) {
         this.email = email;
         this.hashedPassword = hashedPassword;
-        this.registrationDate = LocalDateTime.now();
+        this.registrationDate = registrationDate;
         this.activated = false;
         this.profileLanguage = "en";
         this.profileTimezone = "UTC";
@@ -37,24 +43,35 @@ public class User {
         return activated;
     }
 
-    public void setActivated(boolean activated) {
+    public synchronized void setActivated(boolean activated) {
         this.activated = activated;
+        if (index != null) {
+            index.activationChanged(this);
+        }
     }
 
     public String getProfileLanguage() {
         return profileLanguage;
     }
 
-    public void setProfileLanguage(String profileLanguage) {
+    public synchronized void setProfileLanguage(String profileLanguage) {
+        String previous = this.profileLanguage;
         this.profileLanguage = profileLanguage;
+        if (index != null) {
+            index.languageChanged(this, previous);
+        }
     }
 
     public String getProfileTimezone() {
         return profileTimezone;
     }
 
-    public void setProfileTimezone(String profileTimezone) {
+    public synchronized void setProfileTimezone(String profileTimezone) {
+        String previous = this.profileTimezone;
         this.profileTimezone = profileTimezone;
+        if (index != null) {
+            index.timezoneChanged(this, previous);
+        }
     }
 
     public boolean isEmailNotificationsEnabled() {
@@ -64,6 +81,18 @@ public class User {
     public void setEmailNotificationsEnabled(boolean emailNotificationsEnabled) {
         this.emailNotificationsEnabled = emailNotificationsEnabled;
     }
-}
 
+    // Index bookkeeping, only touched by UserIndex while holding this user's monitor
+    UserIndex getIndex() {
+        return index;
+    }
+
+    void setIndex(UserIndex index, int ordinal) {
+        this.index = index;
+        this.ordinal = ordinal;
+    }
 
+    int getOrdinal() {
+        return ordinal;
+    }
+}
@@ -0,0 +1,227 @@
+package nl.blitz.userregistration;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Secondary indexes over registered users: a navigable index on registration date, an
+ * activation bitmap and hash indexes on profile language and timezone.
+ *
+ * {@link User} setters notify the index while holding the user's monitor, and the index
+ * registers a user under that same monitor, so for every user the indexes reflect the last
+ * value written. Queries return weakly consistent streams over the live index structures
+ * instead of copying the user table.
+ *
+ * Every indexed user holds an ordinal, its position in the activation bitmap. Ordinals of
+ * removed users are handed out again, so the bitmap and the ordinal table stay as large as the
+ * peak number of users rather than the number ever added.
+ */
+public class UserIndex {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final Comparator<User> BY_REGISTRATION_DATE = Comparator
+            .comparing(User::getRegistrationDate)
+            .thenComparing(User::getEmail);
+
+    private final NavigableSet<User> byRegistrationDate;
+    private final ConcurrentBitmap activated;
+    private final Map<String, Set<User>> byLanguage;
+    private final Map<String, Set<User>> byTimezone;
+    // Copied on write under the index's monitor when a chunk is added; readers never lock
+    private volatile AtomicReferenceArray<User>[] byOrdinal;
+    private final AtomicInteger nextOrdinal;
+    private final Queue<Integer> freeOrdinals;
+    private final AtomicInteger activatedCount;
+
+    public UserIndex() {
+        this.byRegistrationDate = new ConcurrentSkipListSet<>(BY_REGISTRATION_DATE);
+        this.activated = new ConcurrentBitmap();
+        this.byLanguage = new ConcurrentHashMap<>();
+        this.byTimezone = new ConcurrentHashMap<>();
+        this.byOrdinal = newChunks(0);
+        this.nextOrdinal = new AtomicInteger();
+        this.freeOrdinals = new ConcurrentLinkedQueue<>();
+        this.activatedCount = new AtomicInteger();
+    }
+
+    public void add(User user) {
+        synchronized (user) {
+            if (user.getIndex() != null) {
+                throw new IllegalStateException("User is already indexed: " + user.getEmail());
+            }
+            Integer free = freeOrdinals.poll();
+            int ordinal = free != null ? free : nextOrdinal.getAndIncrement();
+            chunk(ordinal, true).set(ordinal & (CHUNK_SIZE - 1), user);
+            user.setIndex(this, ordinal);
+            byRegistrationDate.add(user);
+            addTo(byLanguage, user.getProfileLanguage(), user);
+            addTo(byTimezone, user.getProfileTimezone(), user);
+            if (user.isActivated()) {
+                activated.set(ordinal);
+                activatedCount.incrementAndGet();
+            }
+        }
+    }
+
+    public void remove(User user) {
+        synchronized (user) {
+            if (user.getIndex() != this) {
+                return;
+            }
+            int ordinal = user.getOrdinal();
+            if (activated.get(ordinal)) {
+                activated.clear(ordinal);
+                activatedCount.decrementAndGet();
+            }
+            removeFrom(byTimezone, user.getProfileTimezone(), user);
+            removeFrom(byLanguage, user.getProfileLanguage(), user);
+            byRegistrationDate.remove(user);
+            chunk(ordinal, false).set(ordinal & (CHUNK_SIZE - 1), null);
+            user.setIndex(null, -1);
+            freeOrdinals.add(ordinal);
+        }
+    }
+
+    /**
+     * Users registered in {@code [from, to)}, oldest first.
+     */
+    public Stream<User> registeredBetween(LocalDateTime from, LocalDateTime to) {
+        return byRegistrationDate.subSet(probe(from), true, probe(to), false).stream();
+    }
+
+    /**
+     * Users registered before {@code cutoff}, oldest first.
+     */
+    public Stream<User> registeredBefore(LocalDateTime cutoff) {
+        return byRegistrationDate.headSet(probe(cutoff), false).stream();
+    }
+
+    /**
+     * Users that registered before {@code cutoff} and have not activated their account, e.g.
+     * for cleanup or re-sending verification emails.
+     */
+    public Stream<User> unactivatedRegisteredBefore(LocalDateTime cutoff) {
+        return registeredBefore(cutoff).filter(user -> !user.isActivated());
+    }
+
+    public Stream<User> activatedUsers() {
+        return activated.stream().mapToObj(this::userAt).filter(user -> user != null);
+    }
+
+    public int getActivatedCount() {
+        return activatedCount.get();
+    }
+
+    public int size() {
+        return byRegistrationDate.size();
+    }
+
+    public Stream<User> byLanguage(String language) {
+        return byLanguage.getOrDefault(language, Set.of()).stream();
+    }
+
+    public Stream<User> byTimezone(String timezone) {
+        return byTimezone.getOrDefault(timezone, Set.of()).stream();
+    }
+
+    public Map<String, Integer> countsByLanguage() {
+        return counts(byLanguage);
+    }
+
+    public Map<String, Integer> countsByTimezone() {
+        return counts(byTimezone);
+    }
+
+    // Called by User setters while holding the user's monitor
+    void activationChanged(User user) {
+        int ordinal = user.getOrdinal();
+        boolean wasActivated = activated.get(ordinal);
+        if (user.isActivated() && !wasActivated) {
+            activated.set(ordinal);
+            activatedCount.incrementAndGet();
+        } else if (!user.isActivated() && wasActivated) {
+            activated.clear(ordinal);
+            activatedCount.decrementAndGet();
+        }
+    }
+
+    void languageChanged(User user, String previous) {
+        removeFrom(byLanguage, previous, user);
+        addTo(byLanguage, user.getProfileLanguage(), user);
+    }
+
+    void timezoneChanged(User user, String previous) {
+        removeFrom(byTimezone, previous, user);
+        addTo(byTimezone, user.getProfileTimezone(), user);
+    }
+
+    private User userAt(int ordinal) {
+        AtomicReferenceArray<User> chunk = chunk(ordinal, false);
+        return chunk == null ? null : chunk.get(ordinal & (CHUNK_SIZE - 1));
+    }
+
+    private AtomicReferenceArray<User> chunk(int ordinal, boolean create) {
+        int index = ordinal >>> CHUNK_BITS;
+        AtomicReferenceArray<User>[] chunks = byOrdinal;
+        AtomicReferenceArray<User> chunk = index < chunks.length ? chunks[index] : null;
+        if (chunk == null && create) {
+            chunk = addChunk(index);
+        }
+        return chunk;
+    }
+
+    private synchronized AtomicReferenceArray<User> addChunk(int index) {
+        AtomicReferenceArray<User>[] chunks = byOrdinal;
+        if (index < chunks.length && chunks[index] != null) {
+            return chunks[index];
+        }
+        AtomicReferenceArray<User>[] grown = Arrays.copyOf(chunks, Math.max(chunks.length, index + 1));
+        grown[index] = new AtomicReferenceArray<>(CHUNK_SIZE);
+        byOrdinal = grown;
+        return grown[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<User>[] newChunks(int length) {
+        return (AtomicReferenceArray<User>[]) new AtomicReferenceArray<?>[length];
+    }
+
+    private static void addTo(Map<String, Set<User>> index, String key, User user) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(user);
+        }
+    }
+
+    private static void removeFrom(Map<String, Set<User>> index, String key, User user) {
+        if (key != null) {
+            Set<User> users = index.get(key);
+            if (users != null) {
+                users.remove(user);
+            }
+        }
+    }
+
+    private static Map<String, Integer> counts(Map<String, Set<User>> index) {
+        return index.entrySet().stream()
+                .filter(entry -> !entry.getValue().isEmpty())
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().size()));
+    }
+
+    private static User probe(LocalDateTime registrationDate) {
+        // Sorts before every real user registered at the same instant
+        return new User("", null, registrationDate);
+    }
+}
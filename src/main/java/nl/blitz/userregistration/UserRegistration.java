@@ -1,9 +1,26 @@
 package nl.blitz.userregistration;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -15,60 +32,212 @@ public class UserRegistration implements UserRegistrationService {
     );
     private static final int MIN_PASSWORD_LENGTH = 8;
     private static final int TOKEN_EXPIRY_HOURS = 24;
+    static final long EMAIL_DELAY_MILLIS = 50;
+    private static final String TOO_MANY_ATTEMPTS = "Too many attempts, please try again later";
+    private static final String SERVICE_BUSY = "Service is busy, please try again later";
+    public static final String WEAK_PASSWORD = "Password does not meet requirements";
     
     private final List<User> users;
+    private final Map<String, User> usersByEmail;
+    private final UserIndex userIndex;
     private final List<VerificationToken> tokens;
+    private final Map<String, VerificationToken> tokensByValue;
     private final List<String> registrationLogs;
-    private String lastVerificationEmailSentTo;
-    private String lastWelcomeEmailSentTo;
+    private final RegistrationJournal journal;
+    private final RegistrationEventFeed eventFeed;
+    private final SpentTokenSet spentTokens;
+    private volatile TokenSigner tokenSigner;
+    private volatile SignedTokenOwners signedTokenOwners;
+    private volatile BreachedPasswordScreen passwordScreen;
+    private volatile DomainBlocklist domainBlocklist;
+    private volatile AdmissionControl admissionControl;
+    private volatile Clock clock;
+    private volatile long emailDelayMillis = EMAIL_DELAY_MILLIS;
+    private volatile String lastVerificationEmailSentTo;
+    private volatile String lastWelcomeEmailSentTo;
 
     public UserRegistration() {
-        this.users = new ArrayList<>();
-        this.tokens = new ArrayList<>();
-        this.registrationLogs = new ArrayList<>();
+        this(null);
+    }
+
+    /**
+     * Creates a registration that persists user, activation and token mutations to the given
+     * journal. Existing journal entries are replayed first to rebuild the in-memory state.
+     */
+    public UserRegistration(RegistrationJournal journal) {
+        this.users = Collections.synchronizedList(new ArrayList<>());
+        this.usersByEmail = new ConcurrentHashMap<>();
+        this.userIndex = new UserIndex();
+        this.tokens = Collections.synchronizedList(new ArrayList<>());
+        this.tokensByValue = new ConcurrentHashMap<>();
+        this.registrationLogs = Collections.synchronizedList(new ArrayList<>());
+        this.journal = journal;
+        this.eventFeed = new RegistrationEventFeed();
+        this.spentTokens = new SpentTokenSet();
+        this.admissionControl = AdmissionControl.unlimited();
+        this.clock = Clock.systemDefaultZone();
+        if (journal != null) {
+            try {
+                journal.replay(this::applyJournalEntry);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to replay registration journal", e);
+            }
+        }
+    }
+
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    /**
+     * Sets how long sending a simulated email takes; tests that register many users lower it.
+     */
+    void setEmailDelayMillis(long emailDelayMillis) {
+        this.emailDelayMillis = emailDelayMillis;
+    }
+
+    AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    /**
+     * Sets the clock used for registration dates, token expiry and log timestamps, e.g. a
+     * virtual clock for deterministic replays.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Switches new verification tokens to stateless, HMAC-signed tokens. Signed tokens are
+     * not stored or journaled; only their one-time use is tracked, in memory, until they
+     * expire. Tokens issued before the switch keep working.
+     */
+    public void setTokenSigner(TokenSigner tokenSigner) {
+        this.tokenSigner = tokenSigner;
+        if (tokenSigner == null) {
+            signedTokenOwners = null;
+            return;
+        }
+        // Publish first, then index: users stored meanwhile are added by storeUser or seen here
+        SignedTokenOwners owners = new SignedTokenOwners(tokenSigner);
+        signedTokenOwners = owners;
+        for (User user : getAllUsers()) {
+            owners.add(user);
+        }
+    }
+
+    /**
+     * Rejects passwords found in the given breach corpus, on top of the length and character
+     * class rules.
+     */
+    public void setPasswordScreen(BreachedPasswordScreen passwordScreen) {
+        this.passwordScreen = passwordScreen;
+    }
+
+    /**
+     * Rejects email addresses whose domain is on the given blocklist. May be called at any
+     * time to swap in a reloaded list; validations in flight finish against the old one.
+     */
+    public void setDomainBlocklist(DomainBlocklist domainBlocklist) {
+        this.domainBlocklist = domainBlocklist;
     }
 
     @Override
     public RegistrationResult registerUser(String email, String password) {
+        return registerUser(null, email, password);
+    }
+
+    /**
+     * Registers a user on behalf of the given caller (e.g. a client IP or API key), which is
+     * subject to the per-caller rate limit of the configured {@link AdmissionControl}.
+     */
+    public RegistrationResult registerUser(String callerId, String email, String password) {
+        AdmissionControl admission = admissionControl;
+        RegistrationResult created = createAccount(callerId, email, password, admission);
+        if (!created.isSuccess()) {
+            return created;
+        }
+        try {
+            // Send verification email
+            sendVerificationEmail(email, created.getVerificationToken());
+        } finally {
+            admission.releaseEmail();
+        }
+        return completeRegistration(email, created.getVerificationToken());
+    }
+
+    /**
+     * Validates, stores the user and generates the verification token: every registration
+     * step except sending the verification email. On success the caller holds an email
+     * permit of {@code admission} and must release it once the email has been sent.
+     */
+    RegistrationResult createAccount(String callerId, String email, String password, AdmissionControl admission) {
+        if (!admission.admit(callerId, email)) {
+            return new RegistrationResult(false, TOO_MANY_ATTEMPTS, email, null);
+        }
+
         logEvent("Registration attempt for email: " + email);
         
         // Validate email format
         if (!isValidEmail(email)) {
             logEvent("Registration failed: Invalid email format");
+            publishEvent(RegistrationEvent.Type.VALIDATION_FAILED, email, "Invalid email format");
             return new RegistrationResult(false, "Invalid email format", email, null);
         }
         
         // Check for duplicate email
         if (userExists(email)) {
             logEvent("Registration failed: Email already exists");
+            publishEvent(RegistrationEvent.Type.VALIDATION_FAILED, email, "Email already registered");
             return new RegistrationResult(false, "Email already registered", email, null);
         }
         
         // Validate password strength
         if (!isValidPassword(password)) {
             logEvent("Registration failed: Password does not meet requirements");
-            return new RegistrationResult(false, "Password does not meet requirements", email, null);
+            publishEvent(RegistrationEvent.Type.VALIDATION_FAILED, email, "Password does not meet requirements");
+            return new RegistrationResult(false, WEAK_PASSWORD, email, null);
         }
         
         // Hash password
-        String hashedPassword = hashPassword(password);
+        if (!admission.tryAcquireHashing()) {
+            return new RegistrationResult(false, SERVICE_BUSY, email, null);
+        }
+        String hashedPassword;
+        try {
+            hashedPassword = hashPassword(password);
+        } finally {
+            admission.releaseHashing();
+        }
+        
+        if (!admission.tryAcquireEmail()) {
+            return new RegistrationResult(false, SERVICE_BUSY, email, null);
+        }
         
         // Create user
-        User user = new User(email, hashedPassword);
+        User user = new User(email, hashedPassword, LocalDateTime.now(clock));
         
         // Initialize user profile
         initializeUserProfile(user);
         
         // Store user
-        users.add(user);
+        if (!storeUser(user)) {
+            admission.releaseEmail();
+            logEvent("Registration failed: Email already exists");
+            publishEvent(RegistrationEvent.Type.VALIDATION_FAILED, email, "Email already registered");
+            return new RegistrationResult(false, "Email already registered", email, null);
+        }
+        journal(JournalEntry.userCreated(user));
         
         // Generate verification token
         String token = generateVerificationToken(email);
-        
-        // Send verification email
-        sendVerificationEmail(email, token);
-        
+        return new RegistrationResult(true, null, email, token);
+    }
+
+    RegistrationResult completeRegistration(String email, String token) {
         logEvent("User registered successfully: " + email);
+        publishEvent(RegistrationEvent.Type.REGISTERED, email, "User registered");
         
         return new RegistrationResult(true, "Registration successful. Please check your email for verification.", email, token);
     }
@@ -78,7 +247,11 @@ public class UserRegistration implements UserRegistrationService {
         if (email == null || email.isEmpty()) {
             return false;
         }
-        return EMAIL_PATTERN.matcher(email).matches();
+        if (!EMAIL_PATTERN.matcher(email).matches()) {
+            return false;
+        }
+        DomainBlocklist blocklist = domainBlocklist;
+        return blocklist == null || !blocklist.isBlocked(email, email.lastIndexOf('@') + 1, email.length());
     }
 
     @Override
@@ -100,20 +273,26 @@ public class UserRegistration implements UserRegistrationService {
             }
         }
         
-        return hasUpperCase && hasLowerCase && hasDigit;
+        if (!hasUpperCase || !hasLowerCase || !hasDigit) {
+            return false;
+        }
+        
+        // Screen last; the breach corpus lookup is the only check that may touch disk
+        BreachedPasswordScreen screen = passwordScreen;
+        return screen == null || !screen.isBreached(password);
     }
 
     @Override
     public boolean userExists(String email) {
-        return users.stream().anyMatch(user -> user.getEmail().equalsIgnoreCase(email));
+        return getUserByEmail(email) != null;
     }
 
     @Override
     public User getUserByEmail(String email) {
-        return users.stream()
-                .filter(user -> user.getEmail().equalsIgnoreCase(email))
-                .findFirst()
-                .orElse(null);
+        if (email == null) {
+            return null;
+        }
+        return usersByEmail.get(normalizeEmail(email));
     }
 
     @Override
@@ -138,26 +317,73 @@ public class UserRegistration implements UserRegistrationService {
 
     @Override
     public String generateVerificationToken(String email) {
-        String token = "VERIFY-" + UUID.randomUUID().toString().substring(0, 16).toUpperCase();
-        LocalDateTime expiresAt = LocalDateTime.now().plusHours(TOKEN_EXPIRY_HOURS);
-        
-        VerificationToken verificationToken = new VerificationToken(token, email, expiresAt);
-        tokens.add(verificationToken);
+        TokenSigner signer = tokenSigner;
+        String token;
+        if (signer != null) {
+            Instant now = clock.instant();
+            token = signer.sign(email, now, now.plusSeconds(TOKEN_EXPIRY_HOURS * 3600L));
+        } else {
+            token = "VERIFY-" + UUID.randomUUID().toString().substring(0, 16).toUpperCase();
+            LocalDateTime now = LocalDateTime.now(clock);
+            LocalDateTime expiresAt = now.plusHours(TOKEN_EXPIRY_HOURS);
+
+            VerificationToken verificationToken = new VerificationToken(token, email, now, expiresAt);
+            storeToken(verificationToken);
+            journal(JournalEntry.tokenCreated(verificationToken));
+        }
         
         logger.info("Generated verification token for: " + email);
+        publishEvent(RegistrationEvent.Type.TOKEN_GENERATED, email, "Verification token generated");
         return token;
     }
 
     @Override
     public VerificationToken getVerificationToken(String token) {
-        return tokens.stream()
-                .filter(t -> t.getToken().equals(token))
-                .findFirst()
-                .orElse(null);
+        if (token == null) {
+            return null;
+        }
+        VerificationToken stored = tokensByValue.get(token);
+        if (stored != null || tokenSigner == null) {
+            return stored;
+        }
+        return reconstructSignedToken(token);
+    }
+
+    /**
+     * Rebuilds the {@link VerificationToken} view of a signed token. The token only carries a
+     * keyed hash of the email, which is looked up in an index of the registered users kept for
+     * the current signer; this is meant for inspection, verification never needs it.
+     */
+    private VerificationToken reconstructSignedToken(String token) {
+        SignedTokenOwners owners = signedTokenOwners;
+        if (owners == null) {
+            return null;
+        }
+        TokenSigner.SignedToken signed = owners.signer.decode(token);
+        if (signed == null) {
+            return null;
+        }
+        User owner = owners.usersByEmailKey.get(signed.getEmailKey());
+        if (owner == null) {
+            return null;
+        }
+        VerificationToken verificationToken = new VerificationToken(token, owner.getEmail(),
+                LocalDateTime.ofInstant(signed.getCreatedAt(), clock.getZone()),
+                LocalDateTime.ofInstant(signed.getExpiresAt(), clock.getZone()));
+        verificationToken.setUsed(spentTokens.isSpent(signed.getNonce(), signed.getExpiresAt()));
+        return verificationToken;
     }
 
     @Override
     public boolean verifyToken(String token, String email) {
+        TokenSigner signer = tokenSigner;
+        if (signer != null && token != null && !tokensByValue.containsKey(token)) {
+            TokenSigner.SignedToken signed = signer.decode(token);
+            return signed != null
+                    && !clock.instant().isAfter(signed.getExpiresAt())
+                    && !spentTokens.isSpent(signed.getNonce(), signed.getExpiresAt())
+                    && signer.isIssuedFor(signed, email);
+        }
         VerificationToken verificationToken = getVerificationToken(token);
         if (verificationToken == null) {
             return false;
@@ -165,7 +391,7 @@ public class UserRegistration implements UserRegistrationService {
         if (verificationToken.isUsed()) {
             return false;
         }
-        if (verificationToken.isExpired()) {
+        if (verificationToken.isExpired(clock)) {
             return false;
         }
         return verificationToken.getEmail().equalsIgnoreCase(email);
@@ -173,33 +399,84 @@ public class UserRegistration implements UserRegistrationService {
 
     @Override
     public boolean activateAccount(String email, String token) {
+        return activateAccount(null, email, token);
+    }
+
+    /**
+     * Activates an account on behalf of the given caller, subject to the configured
+     * {@link AdmissionControl}.
+     */
+    public boolean activateAccount(String callerId, String email, String token) {
+        AdmissionControl admission = admissionControl;
+        if (!admission.admit(callerId, email) || !admission.tryAcquireEmail()) {
+            return false;
+        }
+        try {
+            if (!confirmActivation(email, token)) {
+                return false;
+            }
+            
+            // Send welcome email
+            sendWelcomeEmail(email);
+        } finally {
+            admission.releaseEmail();
+        }
+        completeActivation(email);
+        return true;
+    }
+
+    /**
+     * Verifies the token and marks the account activated and the token used: every
+     * activation step except sending the welcome email.
+     */
+    boolean confirmActivation(String email, String token) {
         logEvent("Account activation attempt for: " + email);
         
         if (!verifyToken(token, email)) {
             logEvent("Account activation failed: Invalid or expired token");
+            publishEvent(RegistrationEvent.Type.VALIDATION_FAILED, email, "Invalid or expired token");
             return false;
         }
         
         User user = getUserByEmail(email);
         if (user == null) {
             logEvent("Account activation failed: User not found");
+            publishEvent(RegistrationEvent.Type.VALIDATION_FAILED, email, "User not found");
             return false;
         }
         
-        user.setActivated(true);
-        
-        VerificationToken verificationToken = getVerificationToken(token);
+        VerificationToken verificationToken = tokensByValue.get(token);
+        boolean spent = verificationToken != null ? verificationToken.markUsed() : spendSignedToken(token);
+        if (!spent) {
+            // Another activation used the same token first
+            logEvent("Account activation failed: Invalid or expired token");
+            publishEvent(RegistrationEvent.Type.VALIDATION_FAILED, email, "Invalid or expired token");
+            return false;
+        }
         if (verificationToken != null) {
-            verificationToken.setUsed(true);
+            journal(JournalEntry.tokenUsed(token, true));
         }
-        
-        // Send welcome email
-        sendWelcomeEmail(email);
-        
-        logEvent("Account activated successfully: " + email);
+
+        user.setActivated(true);
+        journal(JournalEntry.userActivated(user.getEmail(), true));
         return true;
     }
 
+    private boolean spendSignedToken(String token) {
+        TokenSigner signer = tokenSigner;
+        TokenSigner.SignedToken signed = signer == null ? null : signer.decode(token);
+        if (signed == null || !spentTokens.markSpent(signed.getNonce(), signed.getExpiresAt(), clock.instant())) {
+            return false;
+        }
+        journal(JournalEntry.tokenSpent(signed.getNonce(), signed.getExpiresAt()));
+        return true;
+    }
+
+    void completeActivation(String email) {
+        logEvent("Account activated successfully: " + email);
+        publishEvent(RegistrationEvent.Type.ACTIVATED, email, "Account activated");
+    }
+
     @Override
     public boolean isAccountActivated(String email) {
         User user = getUserByEmail(email);
@@ -208,21 +485,29 @@ public class UserRegistration implements UserRegistrationService {
 
     @Override
     public void sendVerificationEmail(String email, String token) {
-        String subject = "Verify Your Account";
-        String verificationLink = "https://example.com/verify?token=" + token + "&email=" + email;
-        String body = buildVerificationEmailBody(email, verificationLink, token);
-        
-        logger.info("Sending verification email to: " + email);
-        logger.info("Subject: " + subject);
-        logger.info("Body: " + body);
+        prepareVerificationEmail(email, token);
         
         // Simulate email sending
         try {
-            Thread.sleep(50);
+            Thread.sleep(emailDelayMillis);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
         
+        verificationEmailSent(email);
+    }
+
+    void prepareVerificationEmail(String email, String token) {
+        String subject = "Verify Your Account";
+        String verificationLink = "https://example.com/verify?token=" + token + "&email=" + email;
+        String body = buildVerificationEmailBody(email, verificationLink, token);
+        
+        logger.info("Sending verification email to: " + email);
+        logger.info("Subject: " + subject);
+        logger.info("Body: " + body);
+    }
+
+    void verificationEmailSent(String email) {
         lastVerificationEmailSentTo = email;
         logger.info("Verification email sent successfully to: " + email);
     }
@@ -243,9 +528,27 @@ public class UserRegistration implements UserRegistrationService {
 
     @Override
     public void sendWelcomeEmail(String email) {
+        if (!prepareWelcomeEmail(email)) {
+            return;
+        }
+        
+        // Simulate email sending
+        try {
+            Thread.sleep(emailDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        welcomeEmailSent(email);
+    }
+
+    /**
+     * Composes the welcome email, returning false if there is no such user to welcome.
+     */
+    boolean prepareWelcomeEmail(String email) {
         User user = getUserByEmail(email);
         if (user == null) {
-            return;
+            return false;
         }
         
         String subject = "Welcome to Our Platform!";
@@ -254,14 +557,10 @@ public class UserRegistration implements UserRegistrationService {
         logger.info("Sending welcome email to: " + email);
         logger.info("Subject: " + subject);
         logger.info("Body: " + body);
-        
-        // Simulate email sending
-        try {
-            Thread.sleep(50);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        
+        return true;
+    }
+
+    void welcomeEmailSent(String email) {
         lastWelcomeEmailSentTo = email;
         logger.info("Welcome email sent successfully to: " + email);
     }
@@ -307,12 +606,287 @@ public class UserRegistration implements UserRegistrationService {
         return new ArrayList<>(registrationLogs);
     }
 
+    /**
+     * Secondary indexes for querying users by registration date, activation state, language
+     * and timezone without copying {@link #getAllUsers()}.
+     */
+    public UserIndex getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Feed of registration events for downstream consumers that want to follow registrations
+     * incrementally instead of polling {@link #getRegistrationLogs()}.
+     */
+    public RegistrationEventFeed getEventFeed() {
+        return eventFeed;
+    }
+
+    /**
+     * Returns a future that completes once every mutation made so far is durable in the
+     * journal. Completes immediately when no journal is configured.
+     */
+    public CompletableFuture<Void> syncJournal() {
+        if (journal == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return journal.sync();
+    }
+
+    /**
+     * Moves the given users, by normalized email, together with their stored tokens to the
+     * registration {@code ownerOf} names for them; emails that are not registered here or are
+     * still owned here are skipped. The users and the signed tokens spent here are imported
+     * and journaled on the targets, and only once those entries are durable are the users
+     * removed and journaled as removed here, so a crash in between leaves a user on both
+     * sides rather than on neither. If an import or journal write fails, the users already
+     * imported are taken out of their targets again and stay here. Callers must make sure no
+     * other operation touches the moved users meanwhile. Returns the emails of the users moved.
+     */
+    Set<String> transferUsers(Collection<String> emails, Function<String, UserRegistration> ownerOf) {
+        Map<String, UserRegistration> moves = new LinkedHashMap<>();
+        for (String email : emails) {
+            UserRegistration owner = ownerOf.apply(email);
+            if (owner != null && owner != this && usersByEmail.containsKey(email)) {
+                moves.put(email, owner);
+            }
+        }
+        if (moves.isEmpty()) {
+            return Set.of();
+        }
+        Map<String, List<VerificationToken>> movedTokens = new HashMap<>();
+        synchronized (tokens) {
+            for (VerificationToken token : tokens) {
+                String email = normalizeEmail(token.getEmail());
+                if (moves.containsKey(email)) {
+                    movedTokens.computeIfAbsent(email, e -> new ArrayList<>()).add(token);
+                }
+            }
+        }
+
+        List<String> imported = new ArrayList<>();
+        List<CompletableFuture<Void>> durable = new ArrayList<>();
+        try {
+            for (UserRegistration target : new LinkedHashSet<>(moves.values())) {
+                // Nonces do not say whose token they were, so every target gets all of them
+                durable.add(target.importSpentTokens(spentTokens));
+            }
+            for (Map.Entry<String, UserRegistration> move : moves.entrySet()) {
+                durable.add(move.getValue().importUser(usersByEmail.get(move.getKey()),
+                        movedTokens.getOrDefault(move.getKey(), List.of())));
+                imported.add(move.getKey());
+            }
+            CompletableFuture.allOf(durable.toArray(new CompletableFuture<?>[0])).join();
+        } catch (RuntimeException e) {
+            for (String email : imported) {
+                moves.get(email).discardUser(email);
+            }
+            throw e;
+        }
+
+        for (Map.Entry<String, UserRegistration> move : moves.entrySet()) {
+            User user = usersByEmail.remove(move.getKey());
+            for (VerificationToken token : movedTokens.getOrDefault(move.getKey(), List.of())) {
+                tokensByValue.remove(token.getToken());
+            }
+            userIndex.remove(user);
+            forgetSignedTokenOwner(user);
+            journal(JournalEntry.userRemoved(user.getEmail()));
+        }
+        Set<String> moved = moves.keySet();
+        users.removeIf(user -> moved.contains(normalizeEmail(user.getEmail())));
+        tokens.removeIf(token -> moved.contains(normalizeEmail(token.getEmail())));
+        logEvent("Transferred " + moves.size() + " users to other registrations");
+        return moved;
+    }
+
+    /**
+     * Stores and journals a copy of a user and their tokens from another registration, which
+     * keeps its own until the returned future says the move is durable here. The same user
+     * already being here, as an interrupted move leaves them, counts as imported.
+     */
+    private CompletableFuture<Void> importUser(User original, List<VerificationToken> userTokens) {
+        User user = new User(original.getEmail(), original.getHashedPassword(), original.getRegistrationDate());
+        user.setActivated(original.isActivated());
+        user.setProfileLanguage(original.getProfileLanguage());
+        user.setProfileTimezone(original.getProfileTimezone());
+        user.setEmailNotificationsEnabled(original.isEmailNotificationsEnabled());
+        boolean leftOver = false;
+        if (!storeUser(user)) {
+            User existing = usersByEmail.get(normalizeEmail(user.getEmail()));
+            if (existing == null || !existing.getHashedPassword().equals(user.getHashedPassword())
+                    || !existing.getRegistrationDate().equals(user.getRegistrationDate())) {
+                throw new IllegalStateException("Another user is already registered here: " + user.getEmail());
+            }
+            user = existing;
+            leftOver = true;
+        }
+        List<CompletableFuture<Void>> durable = new ArrayList<>();
+        try {
+            if (!leftOver) {
+                durable.add(journal(JournalEntry.userCreated(user)));
+            }
+            if (original.isActivated() && (!leftOver || !user.isActivated())) {
+                user.setActivated(true);
+                durable.add(journal(JournalEntry.userActivated(user.getEmail(), true)));
+            }
+            for (VerificationToken stored : userTokens) {
+                if (tokensByValue.containsKey(stored.getToken())) {
+                    continue;
+                }
+                VerificationToken token = new VerificationToken(stored.getToken(), stored.getEmail(),
+                        stored.getCreatedAt(), stored.getExpiresAt());
+                token.setUsed(stored.isUsed());
+                storeToken(token);
+                durable.add(journal(JournalEntry.tokenCreated(token)));
+                if (token.isUsed()) {
+                    durable.add(journal(JournalEntry.tokenUsed(token.getToken(), true)));
+                }
+            }
+        } catch (RuntimeException e) {
+            discardUser(normalizeEmail(user.getEmail()));
+            throw e;
+        }
+        return CompletableFuture.allOf(durable.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private CompletableFuture<Void> importSpentTokens(SpentTokenSet source) {
+        Instant now = clock.instant();
+        List<CompletableFuture<Void>> durable = new ArrayList<>();
+        source.forEach(now, (nonce, expiresAt) -> {
+            if (spentTokens.markSpent(nonce, expiresAt, now)) {
+                durable.add(journal(JournalEntry.tokenSpent(nonce, expiresAt)));
+            }
+        });
+        return CompletableFuture.allOf(durable.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Undoes {@link #importUser}: drops the user and their tokens and journals the removal.
+     */
+    private void discardUser(String email) {
+        removeUser(email);
+        journal(JournalEntry.userRemoved(email)).whenComplete((ignored, error) -> {
+            if (error != null) {
+                // A restart may bring the user back on this side as well
+                logger.warning("Could not journal removal of " + email + ": " + error.getMessage());
+            }
+        });
+    }
+
+    private void removeUser(String email) {
+        User removed = usersByEmail.remove(email);
+        if (removed != null) {
+            users.remove(removed);
+            userIndex.remove(removed);
+            forgetSignedTokenOwner(removed);
+        }
+        tokens.removeIf(token -> {
+            boolean owned = normalizeEmail(token.getEmail()).equals(email);
+            if (owned) {
+                tokensByValue.remove(token.getToken());
+            }
+            return owned;
+        });
+    }
+
+    private void publishEvent(RegistrationEvent.Type type, String email, String message) {
+        if (eventFeed.getSubscriberCount() > 0) {
+            eventFeed.publish(new RegistrationEvent(type, email, message, LocalDateTime.now(clock)));
+        }
+    }
+
+    private CompletableFuture<Void> journal(JournalEntry entry) {
+        if (journal == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return journal.append(entry);
+    }
+
+    private void applyJournalEntry(JournalEntry entry) {
+        switch (entry.getType()) {
+            case USER_CREATED:
+                User user = new User(entry.getKey(), entry.getValue(), entry.getCreatedAt());
+                initializeUserProfile(user);
+                storeUser(user);
+                break;
+            case USER_ACTIVATED:
+                User activated = getUserByEmail(entry.getKey());
+                if (activated != null) {
+                    activated.setActivated(entry.getFlag());
+                }
+                break;
+            case TOKEN_CREATED:
+                storeToken(new VerificationToken(entry.getKey(), entry.getValue(),
+                        entry.getCreatedAt(), entry.getExpiresAt()));
+                break;
+            case TOKEN_USED:
+                VerificationToken used = getVerificationToken(entry.getKey());
+                if (used != null) {
+                    used.setUsed(entry.getFlag());
+                }
+                break;
+            case TOKEN_SPENT:
+                spentTokens.markSpent(Long.parseLong(entry.getKey()),
+                        entry.getExpiresAt().toInstant(ZoneOffset.UTC), clock.instant());
+                break;
+            case USER_REMOVED:
+                removeUser(normalizeEmail(entry.getKey()));
+                break;
+            default:
+                logger.warning("Skipping unknown journal entry: " + entry.getType());
+        }
+    }
+
+    private boolean storeUser(User user) {
+        if (usersByEmail.putIfAbsent(normalizeEmail(user.getEmail()), user) != null) {
+            return false;
+        }
+        users.add(user);
+        userIndex.add(user);
+        SignedTokenOwners owners = signedTokenOwners;
+        if (owners != null) {
+            owners.add(user);
+        }
+        return true;
+    }
+
+    private void forgetSignedTokenOwner(User user) {
+        SignedTokenOwners owners = signedTokenOwners;
+        if (owners != null) {
+            owners.usersByEmailKey.remove(owners.signer.emailKey(user.getEmail()), user);
+        }
+    }
+
+    private void storeToken(VerificationToken token) {
+        tokens.add(token);
+        tokensByValue.put(token.getToken(), token);
+    }
+
+    private static String normalizeEmail(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
     private void logEvent(String event) {
-        String timestamp = LocalDateTime.now().toString();
+        String timestamp = LocalDateTime.now(clock).toString();
         String logEntry = "[" + timestamp + "] " + event;
         registrationLogs.add(logEntry);
         logger.info(logEntry);
     }
-}
 
+    /**
+     * Registered users keyed by the email hash that tokens from {@code signer} carry.
+     */
+    private static final class SignedTokenOwners {
+        private final TokenSigner signer;
+        private final Map<ByteBuffer, User> usersByEmailKey = new ConcurrentHashMap<>();
+
+        private SignedTokenOwners(TokenSigner signer) {
+            this.signer = signer;
+        }
 
+        private void add(User user) {
+            usersByEmailKey.put(signer.emailKey(user.getEmail()), user);
+        }
+    }
+}
@@ -1,20 +1,26 @@
 package nl.blitz.userregistration;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class VerificationToken {
     private final String token;
     private final String email;
     private final LocalDateTime createdAt;
     private final LocalDateTime expiresAt;
-    private boolean used;
+    private final AtomicBoolean used;
 
     public VerificationToken(String token, String email, LocalDateTime expiresAt) {
+        this(token, email, LocalDateTime.now(), expiresAt);
+    }
+
+    public VerificationToken(String token, String email, LocalDateTime createdAt, LocalDateTime expiresAt) {
         this.token = token;
         this.email = email;
-        this.createdAt = LocalDateTime.now();
+        this.createdAt = createdAt;
         this.expiresAt = expiresAt;
-        this.used = false;
+        this.used = new AtomicBoolean();
     }
 
     public String getToken() {
@@ -34,15 +40,28 @@ public class VerificationToken {
     }
 
     public boolean isUsed() {
-        return used;
+        return used.get();
     }
 
     public void setUsed(boolean used) {
-        this.used = used;
+        this.used.set(used);
+    }
+
+    /**
+     * Marks the token used.
+     *
+     * @return true for exactly one caller, false if the token was already used
+     */
+    public boolean markUsed() {
+        return used.compareAndSet(false, true);
     }
 
     public boolean isExpired() {
-        return LocalDateTime.now().isAfter(expiresAt);
+        return isExpired(Clock.systemDefaultZone());
+    }
+
+    public boolean isExpired(Clock clock) {
+        return LocalDateTime.now(clock).isAfter(expiresAt);
     }
 }
 
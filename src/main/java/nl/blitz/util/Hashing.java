@@ -0,0 +1,28 @@
+package nl.blitz.util;
+
+/**
+ * Fast non-cryptographic hashing for in-memory placement, e.g. hash rings and sketches.
+ */
+public final class Hashing {
+    private Hashing() {
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 chars of {@code key}, starting from the FNV offset basis
+     * xor {@code seed}, followed by the Murmur3 finalizer. Plain FNV leaves similar keys such
+     * as {@code node-a#1} and {@code node-a#2} close together; the finalizer spreads them over
+     * all bits. A seed of 0 gives the same hash in every process.
+     */
+    public static long hash64(CharSequence key, long seed) {
+        long h = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,135 @@
+package nl.blitz.replay;
+
+import nl.blitz.shoppingcart.ShoppingCart;
+import nl.blitz.shoppingcart.SimulatedPaymentGateway;
+import nl.blitz.userregistration.RegistrationResult;
+import nl.blitz.userregistration.UserRegistration;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraceReplayerTest {
+    private static final Instant START = Instant.parse("2024-03-15T12:00:00Z");
+
+    @Test
+    public void testRecordedTrafficReplaysAgainstFreshServices() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceWriter trace = new TraceWriter(bytes, Clock.fixed(START, ZoneOffset.UTC), nanos::get)) {
+            RecordingShoppingCartService cart = new RecordingShoppingCartService(
+                    new ShoppingCart(new SimulatedPaymentGateway(Duration.ZERO)), trace);
+            cart.addItem("Laptop", 999.99, 1);
+            cart.addItem("Wireless Mouse", 29.99, 2);
+            cart.applyDiscount("SUMMER10");
+            cart.checkout("customer@example.com", "CREDIT_CARD");
+
+            RecordingUserRegistrationService registration =
+                    new RecordingUserRegistrationService(new UserRegistration(), trace);
+            RegistrationResult result = registration.registerUser("user@example.com", "SecurePass123");
+            registration.registerUser("weak@example.com", "weak");
+            registration.activateAccount("user@example.com", result.getVerificationToken());
+        }
+
+        List<ShoppingCart> carts = new ArrayList<>();
+        UserRegistration replayRegistration = new UserRegistration();
+        TraceReplayer replayer = new TraceReplayer(() -> {
+            ShoppingCart cart = new ShoppingCart(new SimulatedPaymentGateway(Duration.ZERO));
+            carts.add(cart);
+            return cart;
+        }, replayRegistration, null);
+
+        ReplayReport report = replayer.replay(new ByteArrayInputStream(bytes.toByteArray()), ReplaySpeed.max());
+
+        assertEquals(7, report.getCount());
+        assertEquals(2, report.getCount(TraceOp.ADD_ITEM));
+        assertEquals(1, carts.size());
+        assertEquals(1059.97, carts.get(0).calculateSubtotal(), 0.01);
+        assertEquals("SUMMER10", carts.get(0).getAppliedDiscountCode());
+        assertTrue(carts.get(0).getLastPaymentResult().isSuccess());
+        assertTrue(replayRegistration.isAccountActivated("user@example.com"));
+        assertFalse(replayRegistration.userExists("weak@example.com"));
+        assertTrue(report.getPercentileNanos(0.99) >= report.getPercentileNanos(0.5));
+    }
+
+    @Test
+    public void testVirtualClockMakesTokenExpiryDeterministic() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceWriter trace = new TraceWriter(bytes, Clock.fixed(START, ZoneOffset.UTC), nanos::get)) {
+            RecordingUserRegistrationService registration =
+                    new RecordingUserRegistrationService(new UserRegistration(), trace);
+            RegistrationResult late = registration.registerUser("late@example.com", "SecurePass123");
+            RegistrationResult early = registration.registerUser("early@example.com", "SecurePass123");
+            nanos.set(Duration.ofHours(1).toNanos());
+            registration.activateAccount("early@example.com", early.getVerificationToken());
+            nanos.set(Duration.ofHours(25).toNanos());
+            registration.activateAccount("late@example.com", late.getVerificationToken());
+        }
+
+        VirtualClock clock = new VirtualClock(START);
+        UserRegistration replayRegistration = new UserRegistration();
+        replayRegistration.setClock(clock);
+        TraceReplayer replayer = new TraceReplayer(null, replayRegistration, clock);
+
+        ReplayReport report = replayer.replay(new ByteArrayInputStream(bytes.toByteArray()), ReplaySpeed.max());
+
+        assertEquals(4, report.getCount());
+        assertTrue(replayRegistration.isAccountActivated("early@example.com"));
+        assertFalse(replayRegistration.isAccountActivated("late@example.com"));
+    }
+
+    @Test
+    public void testSyntheticPasswordsMatchRecordedValidity() {
+        UserRegistration registration = new UserRegistration();
+
+        assertTrue(registration.isValidPassword(TraceReplayer.syntheticPassword(13, true)));
+        assertFalse(registration.isValidPassword(TraceReplayer.syntheticPassword(13, false)));
+        assertEquals(4, TraceReplayer.syntheticPassword(4, false).length());
+    }
+
+    @Test
+    public void testLatencyIncludesQueueingAndSessionsOverlap() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceWriter trace = new TraceWriter(bytes, Clock.fixed(START, ZoneOffset.UTC), nanos::get)) {
+            RecordingShoppingCartService first = new RecordingShoppingCartService(new ShoppingCart(), trace);
+            RecordingShoppingCartService second = new RecordingShoppingCartService(new ShoppingCart(), trace);
+            for (int i = 0; i < 3; i++) {
+                nanos.set(Duration.ofMillis(10 * i).toNanos());
+                first.addItem("Laptop", 999.99, 1);
+                second.addItem("Laptop", 999.99, 1);
+            }
+        }
+
+        // Each call takes 100 ms, far longer than the 10 ms between the recorded calls
+        TraceReplayer replayer = new TraceReplayer(() -> new ShoppingCart() {
+            @Override
+            public void addItem(String productName, double price, int quantity) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.addItem(productName, price, quantity);
+            }
+        }, null, null);
+
+        ReplayReport report = replayer.replay(new ByteArrayInputStream(bytes.toByteArray()), ReplaySpeed.original());
+
+        assertEquals(6, report.getCount());
+        // The third call of a session was due at 20 ms but could only start after 200 ms
+        assertTrue(report.getPercentileNanos(1.0) >= Duration.ofMillis(250).toNanos());
+        // Both sessions ran side by side rather than one after the other
+        assertTrue(report.getElapsedNanos() < Duration.ofMillis(550).toNanos());
+    }
+}
@@ -0,0 +1,73 @@
+package nl.blitz.shoppingcart;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncShoppingCartTest {
+
+    @Test
+    public void testAsyncCheckoutCompletesPurchase() throws Exception {
+        ShoppingCart cart = new ShoppingCart(new SimulatedPaymentGateway(Duration.ofMillis(20)));
+        cart.addItem("Laptop", 999.99, 1);
+        cart.applyDiscount("SUMMER10");
+        AsyncShoppingCart asyncCart = new AsyncShoppingCart(cart);
+
+        asyncCart.checkout("customer@example.com", "CREDIT_CARD").get(5, TimeUnit.SECONDS);
+
+        assertTrue(cart.getOrderId().startsWith("ORD-"));
+        assertTrue(cart.getLastPaymentResult().isSuccess());
+        assertEquals("customer@example.com", cart.getEmailSentTo());
+    }
+
+    @Test
+    public void testCancelledCheckoutSkipsConfirmationEmailButNotTheCharge() throws Exception {
+        CompletableFuture<PaymentResult> pendingCharge = new CompletableFuture<>();
+        AtomicInteger charges = new AtomicInteger();
+        ShoppingCart cart = new ShoppingCart((transactionId, method, amount) -> {
+            charges.incrementAndGet();
+            return pendingCharge;
+        });
+        cart.addItem("Laptop", 999.99, 1);
+        AsyncShoppingCart asyncCart = new AsyncShoppingCart(cart);
+
+        CompletableFuture<Void> checkout = asyncCart.checkout("customer@example.com", "CREDIT_CARD");
+        assertTrue(checkout.cancel(false));
+        pendingCharge.complete(new PaymentResult(true, "TXN-1", "Payment successful"));
+
+        // Cancellation cannot take back a charge the gateway has already received
+        assertEquals(1, charges.get());
+        assertTrue(cart.getLastPaymentResult().isSuccess());
+        assertNull(cart.getEmailSentTo());
+    }
+
+    @Test
+    public void testCancelledCheckoutStillSettlesStockAndRecordsOrder() {
+        CompletableFuture<PaymentResult> pendingCharge = new CompletableFuture<>();
+        AtomicLong now = new AtomicLong();
+        Inventory inventory = new Inventory(Duration.ofMinutes(15), 4, now::get);
+        inventory.setStock("Laptop", 3);
+        OrderHistoryStore history = new OrderHistoryStore();
+        ShoppingCart cart = new ShoppingCart((transactionId, method, amount) -> pendingCharge);
+        cart.setInventory(inventory, ReservationMode.AT_CHECKOUT);
+        cart.setOrderHistory(history);
+        cart.addItem("Laptop", 999.99, 1);
+        AsyncShoppingCart asyncCart = new AsyncShoppingCart(cart);
+
+        CompletableFuture<Void> checkout = asyncCart.checkout("customer@example.com", "CREDIT_CARD");
+        assertTrue(checkout.cancel(false));
+        pendingCharge.complete(new PaymentResult(true, "TXN-1", "Payment successful"));
+
+        // The paid unit stays sold after the reservation TTL instead of going back on sale
+        now.addAndGet(Duration.ofMinutes(16).toNanos());
+        assertEquals(0, inventory.expireReservations());
+        assertEquals(2, inventory.getAvailable("Laptop"));
+        assertEquals(1, history.size());
+    }
+}
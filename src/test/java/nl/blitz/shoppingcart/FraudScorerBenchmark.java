@@ -0,0 +1,45 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Manual benchmark for the per-payment cost of {@link FraudScorer}, with millions of distinct
+ * cards and emails. A simulated clock spreads the payments so that each velocity window sees
+ * {@code PAYMENTS_PER_WINDOW} of them; with random keys almost none should be declined. Not
+ * run as part of the test suite; run the main method directly.
+ */
+public class FraudScorerBenchmark {
+    private static final int KEYS = 2_000_000;
+    private static final int PAYMENTS = 5_000_000;
+    private static final int PAYMENTS_PER_WINDOW = 100_000;
+    private static final Duration WINDOW = Duration.ofMinutes(10);
+
+    public static void main(String[] args) {
+        String[] cards = new String[KEYS];
+        String[] emails = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            cards[i] = "card-" + Long.toHexString(i * 0x9E3779B97F4A7C15L);
+            emails[i] = "user" + i + "@example.com";
+        }
+        Random random = new Random(5);
+        long[] now = {0};
+        long step = WINDOW.toNanos() / PAYMENTS_PER_WINDOW;
+        FraudScorer scorer = new FraudScorer(WINDOW, 5, 10, PAYMENTS_PER_WINDOW, () -> now[0]);
+
+        for (int round = 0; round < 3; round++) {
+            int declined = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < PAYMENTS; i++) {
+                now[0] += step;
+                int key = random.nextInt(KEYS);
+                double amount = 10 + random.nextDouble() * 200;
+                if (scorer.isDeclined(scorer.score(cards[key], emails[key], amount))) {
+                    declined++;
+                }
+            }
+            double nanos = (System.nanoTime() - start) / (double) PAYMENTS;
+            System.out.printf("%.0f ns/payment  declined=%d%n", nanos, declined);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package nl.blitz.shoppingcart;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FraudScorerTest {
+    @Test
+    public void testVelocityLimitsSlideWithTheWindow() {
+        AtomicLong now = new AtomicLong();
+        FraudScorer scorer = new FraudScorer(Duration.ofMinutes(10), 3, 100, 10_000, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(scorer.isDeclined(scorer.score("card-1", null, 20.0)));
+        }
+        assertTrue(scorer.isDeclined(scorer.score("card-1", null, 20.0)));
+        assertFalse(scorer.isDeclined(scorer.score("card-2", null, 20.0)));
+
+        now.addAndGet(Duration.ofMinutes(11).toNanos());
+        assertFalse(scorer.isDeclined(scorer.score("card-1", null, 20.0)));
+    }
+
+    @Test
+    public void testSketchSlotsExpireWithoutBeingCleared() {
+        AtomicLong now = new AtomicLong();
+        WindowedCountMinSketch sketch = new WindowedCountMinSketch(100, 10, 4, 1024, now::get);
+
+        sketch.incrementAndEstimate("card-1");
+        now.set(50);
+        assertEquals(2, sketch.incrementAndEstimate("card-1"));
+        now.set(99);
+        assertEquals(2, sketch.estimate("card-1"));
+
+        // Slot 0 is back in use for a new epoch; its old count no longer applies
+        now.set(100);
+        assertEquals(1, sketch.estimate("card-1"));
+        assertEquals(2, sketch.incrementAndEstimate("card-1"));
+        now.set(150);
+        assertEquals(1, sketch.estimate("card-1"));
+        now.set(1_000);
+        assertEquals(0, sketch.estimate("card-1"));
+    }
+
+    @Test
+    public void testEmailVelocitySpansPaymentMethods() {
+        FraudScorer scorer = new FraudScorer(Duration.ofMinutes(10), 100, 2, 10_000);
+
+        assertFalse(scorer.isDeclined(scorer.score("card-1", "user@example.com", 20.0)));
+        assertFalse(scorer.isDeclined(scorer.score("card-2", "USER@example.com", 20.0)));
+        assertTrue(scorer.isDeclined(scorer.score("card-3", "user@example.com", 20.0)));
+    }
+
+    @Test
+    public void testUnusualAmountsAreDeclined() {
+        FraudScorer scorer = new FraudScorer(Duration.ofMinutes(10), 1_000_000, 1_000_000, 10_000);
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            scorer.score("card-" + i, null, 20.0 + random.nextDouble() * 80.0);
+        }
+
+        assertFalse(scorer.isDeclined(scorer.score("card-normal", null, 75.0)));
+        assertTrue(scorer.isDeclined(scorer.score("card-large", null, 25_000.0)));
+    }
+
+    @Test
+    public void testCartDeclinesWithoutCallingTheGateway() {
+        AtomicLong charges = new AtomicLong();
+        ShoppingCart cart = new ShoppingCart((id, method, amount) -> {
+            charges.incrementAndGet();
+            return CompletableFuture.completedFuture(new PaymentResult(true, id, "approved"));
+        });
+        cart.setFraudScorer(new FraudScorer(Duration.ofMinutes(10), 100, 1, 10_000));
+        cart.addItem("Laptop", 1000.0, 1);
+
+        cart.checkout("user@example.com", "CREDIT_CARD", "card-1");
+        assertTrue(cart.getLastPaymentResult().isSuccess());
+        cart.checkout("user@example.com", "CREDIT_CARD", "card-2");
+
+        assertFalse(cart.getLastPaymentResult().isSuccess());
+        assertEquals("Payment declined: risk score too high", cart.getLastPaymentResult().getMessage());
+        assertEquals(1, charges.get());
+    }
+
+    @Test
+    public void testPaymentTypeAloneIsNotAVelocityKey() {
+        AtomicLong charges = new AtomicLong();
+        PaymentGateway gateway = (id, method, amount) -> {
+            charges.incrementAndGet();
+            return CompletableFuture.completedFuture(new PaymentResult(true, id, "approved"));
+        };
+        FraudScorer scorer = new FraudScorer();
+
+        for (int i = 0; i < 2 * FraudScorer.DEFAULT_METHOD_LIMIT; i++) {
+            ShoppingCart cart = new ShoppingCart(gateway);
+            cart.setFraudScorer(scorer);
+            cart.addItem("Laptop", 1000.0, 1);
+            cart.checkout("user" + i + "@example.com", "CREDIT_CARD");
+            assertTrue(cart.getLastPaymentResult().isSuccess());
+        }
+        assertEquals(2 * FraudScorer.DEFAULT_METHOD_LIMIT, charges.get());
+    }
+}
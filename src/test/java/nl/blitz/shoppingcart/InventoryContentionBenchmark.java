@@ -0,0 +1,58 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manual benchmark with thousands of threads buying the same SKU, comparing a single stock
+ * counter with striped counters. Not run as part of the test suite; run the main method
+ * directly.
+ */
+public class InventoryContentionBenchmark {
+    private static final int THREADS = 4_000;
+    private static final long STOCK = 2_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int round = 0; round < 2; round++) {
+            for (int stripes = 1; stripes <= Integer.highestOneBit(cores) * 4; stripes *= 4) {
+                run(stripes);
+            }
+        }
+    }
+
+    private static void run(int stripes) throws InterruptedException {
+        Inventory inventory = new Inventory(Duration.ofMinutes(15), stripes, System::nanoTime);
+        inventory.setStock("HOT", STOCK);
+        AtomicLong sold = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            Thread buyer = new Thread(() -> {
+                try {
+                    start.await();
+                    long bought = 0;
+                    Reservation reservation;
+                    while ((reservation = inventory.reserve("HOT", 1)) != null) {
+                        inventory.commit(reservation);
+                        bought++;
+                    }
+                    sold.addAndGet(bought);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            buyer.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("stripes=%-3d sold=%d of %d  %.0f reservations/s%n",
+                stripes, sold.get(), STOCK, sold.get() / seconds);
+    }
+}
@@ -0,0 +1,184 @@
+package nl.blitz.shoppingcart;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InventoryTest {
+    private static final PaymentGateway APPROVE_ALL = (id, method, amount) ->
+            CompletableFuture.completedFuture(new PaymentResult(true, id, "approved"));
+
+    @Test
+    public void testConcurrentBuyersNeverOversell() throws Exception {
+        Inventory inventory = new Inventory(Duration.ofMinutes(15), 8, System::nanoTime);
+        inventory.setStock("HOT", 1_000);
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger failedCommits = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] buyers = new Thread[32];
+        for (int i = 0; i < buyers.length; i++) {
+            int quantity = 1 + i % 3;
+            buyers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Reservation reservation;
+                while ((reservation = inventory.reserve("HOT", quantity)) != null) {
+                    // Assertions in these threads would not reach the test; count and check below
+                    if (!inventory.commit(reservation)) {
+                        failedCommits.incrementAndGet();
+                    }
+                    sold.addAndGet(quantity);
+                }
+            });
+            buyers[i].start();
+        }
+        start.countDown();
+        for (Thread buyer : buyers) {
+            buyer.join();
+        }
+
+        assertEquals(0, failedCommits.get());
+        assertTrue(sold.get() <= 1_000);
+        assertEquals(1_000 - sold.get(), inventory.getAvailable("HOT"));
+    }
+
+    @Test
+    public void testAbandonedReservationsExpire() {
+        AtomicLong now = new AtomicLong();
+        Inventory inventory = new Inventory(Duration.ofMinutes(15), 4, now::get);
+        inventory.setStock("SKU", 3);
+
+        Reservation abandoned = inventory.reserve("SKU", 2);
+        Reservation paid = inventory.reserve("SKU", 1);
+        assertTrue(inventory.commit(paid));
+        assertNull(inventory.reserve("SKU", 1));
+
+        now.addAndGet(Duration.ofMinutes(16).toNanos());
+        assertNotNull(inventory.reserve("SKU", 2));
+        assertEquals(Reservation.State.RELEASED, abandoned.getState());
+        assertEquals(Reservation.State.COMMITTED, paid.getState());
+        assertFalse(inventory.commit(abandoned));
+    }
+
+    @Test
+    public void testReservationsCloseToExpiryAreRenewedBeforeCharging() {
+        AtomicLong now = new AtomicLong();
+        Inventory inventory = new Inventory(Duration.ofMinutes(1), 4, now::get);
+        inventory.setStock("Console", 1);
+        // The payment is slow enough for the original reservation to expire and be swept
+        ShoppingCart cart = new ShoppingCart((id, method, amount) -> {
+            now.addAndGet(Duration.ofSeconds(20).toNanos());
+            inventory.expireReservations();
+            return CompletableFuture.completedFuture(new PaymentResult(true, id, "approved"));
+        });
+        cart.setInventory(inventory, ReservationMode.ON_ADD);
+        cart.addItem("Console", 499.0, 1);
+        now.addAndGet(Duration.ofSeconds(50).toNanos());
+
+        cart.checkout("customer@example.com", "CREDIT_CARD");
+
+        assertTrue(cart.getLastPaymentResult().isSuccess());
+        assertEquals(0, inventory.getAvailable("Console"));
+        assertNull(inventory.reserve("Console", 1));
+    }
+
+    @Test
+    public void testStockSoldDuringPaymentIsRetakenOrRefunded() {
+        AtomicLong now = new AtomicLong();
+        Inventory inventory = new Inventory(Duration.ofSeconds(10), 4, now::get);
+        inventory.setStock("Console", 2);
+        inventory.setStock("Cable", 10);
+        AtomicInteger refunds = new AtomicInteger();
+        boolean[] competitorBuys = {false};
+        PaymentGateway stalling = new PaymentGateway() {
+            @Override
+            public CompletableFuture<PaymentResult> charge(String id, String method, double amount) {
+                // Outlasts even a renewed reservation
+                now.addAndGet(Duration.ofMinutes(1).toNanos());
+                inventory.expireReservations();
+                if (competitorBuys[0]) {
+                    assertTrue(inventory.commit(inventory.reserve("Console", 2)));
+                }
+                return CompletableFuture.completedFuture(new PaymentResult(true, id, "approved"));
+            }
+
+            @Override
+            public CompletableFuture<PaymentResult> refund(String id, double amount) {
+                refunds.incrementAndGet();
+                return CompletableFuture.completedFuture(new PaymentResult(true, id, "refunded"));
+            }
+        };
+
+        ShoppingCart retaken = new ShoppingCart(stalling);
+        retaken.setInventory(inventory, ReservationMode.AT_CHECKOUT);
+        retaken.addItem("Console", 499.0, 1);
+        retaken.checkout("first@example.com", "CREDIT_CARD");
+        assertTrue(retaken.getLastPaymentResult().isSuccess());
+        assertEquals(1, inventory.getAvailable("Console"));
+
+        inventory.addStock("Console", 1);
+        competitorBuys[0] = true;
+        ShoppingCart refunded = new ShoppingCart(stalling);
+        refunded.setInventory(inventory, ReservationMode.AT_CHECKOUT);
+        refunded.addItem("Cable", 9.0, 3);
+        refunded.addItem("Console", 499.0, 1);
+        refunded.checkout("second@example.com", "CREDIT_CARD");
+
+        assertFalse(refunded.getLastPaymentResult().isSuccess());
+        assertEquals("Insufficient stock for Console; payment refunded", refunded.getLastPaymentResult().getMessage());
+        assertEquals(1, refunds.get());
+        assertEquals(0, inventory.getAvailable("Console"));
+        assertEquals(10, inventory.getAvailable("Cable"));
+    }
+
+    @Test
+    public void testReserveOnAddSkipsItemsThatAreOutOfStock() {
+        Inventory inventory = new Inventory();
+        inventory.setStock("Console", 1);
+        ShoppingCart cart = new ShoppingCart(APPROVE_ALL);
+        cart.setInventory(inventory, ReservationMode.ON_ADD);
+
+        cart.addItem("Console", 499.0, 2);
+        cart.addItem("Console", 499.0, 1);
+        cart.addItem("Cable", 9.0, 5);
+
+        assertEquals(2, cart.getItems().size());
+        assertEquals(0, inventory.getAvailable("Console"));
+
+        cart.checkout("customer@example.com", "CREDIT_CARD");
+        assertTrue(cart.getLastPaymentResult().isSuccess());
+        assertEquals(0, inventory.getAvailable("Console"));
+    }
+
+    @Test
+    public void testReserveAtCheckoutFailsWholeCartWhenShort() {
+        Inventory inventory = new Inventory();
+        inventory.setStock("Console", 1);
+        inventory.setStock("Controller", 5);
+        ShoppingCart first = new ShoppingCart(APPROVE_ALL);
+        ShoppingCart second = new ShoppingCart(APPROVE_ALL);
+        first.setInventory(inventory, ReservationMode.AT_CHECKOUT);
+        second.setInventory(inventory, ReservationMode.AT_CHECKOUT);
+        first.addItem("Console", 499.0, 1);
+        second.addItem("Controller", 59.0, 2);
+        second.addItem("Console", 499.0, 1);
+
+        first.checkout("first@example.com", "CREDIT_CARD");
+        second.checkout("second@example.com", "CREDIT_CARD");
+
+        assertTrue(first.getLastPaymentResult().isSuccess());
+        assertFalse(second.getLastPaymentResult().isSuccess());
+        assertEquals("Insufficient stock for Console", second.getLastPaymentResult().getMessage());
+        assertEquals(0, inventory.getAvailable("Console"));
+        assertEquals(5, inventory.getAvailable("Controller"));
+    }
+}
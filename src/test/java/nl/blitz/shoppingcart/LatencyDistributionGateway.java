@@ -0,0 +1,40 @@
+package nl.blitz.shoppingcart;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test double for a payment gateway whose latency follows a bimodal distribution: most calls
+ * take {@code fastMillis} with some jitter, a fraction {@code slowRatio} take
+ * {@code slowMillis}. Latency is scheduled, not slept, so many calls can be in flight.
+ */
+public class LatencyDistributionGateway implements PaymentGateway {
+    private final long fastMillis;
+    private final long slowMillis;
+    private final double slowRatio;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    public LatencyDistributionGateway(long fastMillis, long slowMillis, double slowRatio) {
+        this.fastMillis = fastMillis;
+        this.slowMillis = slowMillis;
+        this.slowRatio = slowRatio;
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> charge(String transactionId, String paymentMethod, double amount) {
+        calls.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = random.nextDouble() < slowRatio
+                ? slowMillis
+                : fastMillis + random.nextLong(Math.max(1, fastMillis / 2));
+        return CompletableFuture.supplyAsync(
+                () -> new PaymentResult(true, transactionId, "Payment successful"),
+                CompletableFuture.delayedExecutor(latency, TimeUnit.MILLISECONDS));
+    }
+
+    public int getCalls() {
+        return calls.get();
+    }
+}
@@ -0,0 +1,119 @@
+package nl.blitz.shoppingcart;
+
+import nl.blitz.replay.VirtualClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderHistoryStoreTest {
+    private static final Instant DAY_ONE = Instant.parse("2024-03-01T10:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSpilledOrdersReadBackIdentically() throws Exception {
+        VirtualClock clock = new VirtualClock(DAY_ONE);
+        OrderHistoryStore store = new OrderHistoryStore(tempDir, 2, Duration.ofDays(1), clock);
+        for (int i = 0; i < 5; i++) {
+            store.append("ORD-" + i,
+                    List.of(new CartItem("Laptop", 1000.0, 1), new CartItem("Mouse-" + i, 25.5, i + 1)),
+                    1000.0 + 25.5 * (i + 1), i, i % 2 == 0 ? List.of("SUMMER10") : List.of(), "TXN-" + i);
+        }
+
+        assertEquals(5, store.size());
+        assertEquals(2, store.getSpilledSegmentCount());
+        for (int i = 0; i < 5; i++) {
+            OrderRecord order = store.getOrder(i);
+            assertEquals("ORD-" + i, order.getOrderId());
+            assertEquals("TXN-" + i, order.getTransactionId());
+            assertEquals(DAY_ONE, order.getTimestamp());
+            assertEquals(2, order.getItems().size());
+            assertEquals("Mouse-" + i, order.getItems().get(1).getProductName());
+            assertEquals(i + 1, order.getItems().get(1).getQuantity());
+            assertEquals(1000.0 + 25.5 * (i + 1) - i, order.getTotal(), 1e-9);
+            assertEquals(i % 2 == 0 ? List.of("SUMMER10") : List.of(), order.getDiscountCodes());
+        }
+
+        store.close();
+        assertEquals(0, Files.list(tempDir).count());
+    }
+
+    @Test
+    public void testSpillIgnoresLeftoverFilesAndKeepsNullApartFromEmpty() throws Exception {
+        // What a crashed run with the old fixed names would have left behind
+        Files.write(tempDir.resolve("orders-000000.seg"), new byte[]{1, 2, 3});
+        OrderHistoryStore store = new OrderHistoryStore(tempDir, 2, Duration.ofDays(1), new VirtualClock(DAY_ONE));
+        store.append("ORD-0", List.of(new CartItem("Laptop", 1000.0, 1)), 1000.0, 0, List.of(), null);
+        store.append("", List.of(new CartItem("Laptop", 1000.0, 1)), 1000.0, 0, List.of(), "");
+
+        assertEquals(1, store.getSpilledSegmentCount());
+        assertNull(store.getOrder(0).getTransactionId());
+        assertEquals("", store.getOrder(1).getOrderId());
+        assertEquals("", store.getOrder(1).getTransactionId());
+
+        store.close();
+        assertEquals(List.of(tempDir.resolve("orders-000000.seg")),
+                Files.list(tempDir).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testAggregatesAreMaintainedPerAppend() {
+        VirtualClock clock = new VirtualClock(DAY_ONE);
+        OrderHistoryStore store = new OrderHistoryStore(null, 4, Duration.ofDays(1), clock);
+        store.append("ORD-1", List.of(new CartItem("Laptop", 1000.0, 1), new CartItem("Mouse", 25.0, 2)),
+                1050.0, 105.0, List.of("SUMMER10"), "TXN-1");
+        store.append("ORD-2", List.of(new CartItem("Mouse", 25.0, 3)), 75.0, 0.0, List.of(), "TXN-2");
+        clock.setInstant(DAY_ONE.plus(Duration.ofDays(1)));
+        store.append("ORD-3", List.of(new CartItem("Keyboard", 80.0, 1)), 80.0, 24.0,
+                List.of("VIP30", "SUMMER10"), "TXN-3");
+
+        List<PeriodSummary> periods = store.periods(Instant.EPOCH, Instant.MAX);
+        assertEquals(2, periods.size());
+        assertEquals(Instant.parse("2024-03-01T00:00:00Z"), periods.get(0).getPeriodStart());
+        assertEquals(2, periods.get(0).getOrderCount());
+        assertEquals(1020.0, periods.get(0).getRevenue(), 1e-9);
+        assertEquals(56.0, store.revenueBetween(Instant.parse("2024-03-02T00:00:00Z"), Instant.MAX), 1e-9);
+
+        List<ProductSales> top = store.topProducts(2);
+        assertEquals("Mouse", top.get(0).getProductName());
+        assertEquals(5, top.get(0).getUnitsSold());
+        assertEquals(125.0, top.get(0).getRevenue(), 1e-9);
+        assertEquals("Keyboard", top.get(1).getProductName());
+
+        assertEquals(2L, (long) store.getDiscountCodeUsage().get("SUMMER10"));
+        assertEquals(1L, (long) store.getDiscountCodeUsage().get("VIP30"));
+        assertEquals(2, store.getDiscountedOrderCount());
+        assertEquals(129.0, store.getTotalDiscount(), 1e-9);
+    }
+
+    @Test
+    public void testCheckoutRecordsOnlyPaidOrders() {
+        OrderHistoryStore store = new OrderHistoryStore();
+        ShoppingCart cart = new ShoppingCart((id, method, amount) ->
+                CompletableFuture.completedFuture(new PaymentResult(!method.equals("DECLINED"), id, "done")));
+        cart.setOrderHistory(store);
+        cart.addItem("Laptop", 1000.0, 1);
+        cart.applyDiscount("SUMMER10");
+
+        cart.checkout("customer@example.com", "DECLINED");
+        assertEquals(0, store.size());
+
+        cart.checkout("customer@example.com", "CREDIT_CARD");
+        assertEquals(1, store.size());
+        OrderRecord order = store.getOrder(0);
+        assertEquals(cart.getOrderId(), order.getOrderId());
+        assertEquals(cart.getLastPaymentResult().getTransactionId(), order.getTransactionId());
+        assertEquals(900.0, order.getTotal(), 1e-9);
+        assertEquals(List.of("SUMMER10"), order.getDiscountCodes());
+    }
+}
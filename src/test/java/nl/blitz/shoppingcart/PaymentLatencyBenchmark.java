@@ -0,0 +1,38 @@
+package nl.blitz.shoppingcart;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Manual benchmark comparing checkout payment latency against a gateway with a slow tail,
+ * with and without hedging. Not run as part of the test suite.
+ */
+public class PaymentLatencyBenchmark {
+    private static final int PAYMENTS = 2_000;
+
+    public static void main(String[] args) {
+        LatencyDistributionGateway gateway = new LatencyDistributionGateway(40, 1_000, 0.03);
+        measure("direct", gateway);
+        measure("resilient", new ResilientPaymentClient(
+                gateway, Duration.ofSeconds(2), new CircuitBreaker(50, Duration.ofSeconds(5))));
+    }
+
+    private static void measure(String label, PaymentGateway gateway) {
+        long[] latencies = new long[PAYMENTS];
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[PAYMENTS];
+        for (int i = 0; i < PAYMENTS; i++) {
+            int n = i;
+            long start = System.nanoTime();
+            calls[i] = gateway.charge("TXN-" + i, "CREDIT_CARD", 10.0)
+                    .thenRun(() -> latencies[n] = System.nanoTime() - start);
+            if (i % 100 == 99) {
+                CompletableFuture.allOf(Arrays.copyOfRange(calls, i - 99, i + 1)).join();
+            }
+        }
+        CompletableFuture.allOf(calls).join();
+        Arrays.sort(latencies);
+        System.out.printf("%-10s p50=%.1f ms p95=%.1f ms p99=%.1f ms%n", label,
+                latencies[PAYMENTS / 2] / 1e6, latencies[PAYMENTS * 95 / 100] / 1e6, latencies[PAYMENTS * 99 / 100] / 1e6);
+    }
+}
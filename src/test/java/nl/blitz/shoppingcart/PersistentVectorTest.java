@@ -0,0 +1,58 @@
+package nl.blitz.shoppingcart;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentVectorTest {
+
+    @Test
+    public void testOlderVersionsAreUnaffectedByAppends() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        PersistentVector<Integer> at1000 = null;
+        for (int i = 0; i < 100_000; i++) {
+            vector = vector.append(i);
+            if (i == 999) {
+                at1000 = vector;
+            }
+        }
+
+        assertEquals(100_000, vector.size());
+        assertEquals(1000, at1000.size());
+        for (int i = 0; i < vector.size(); i += 997) {
+            assertEquals(Integer.valueOf(i), vector.get(i));
+        }
+        int expected = 0;
+        for (int value : at1000) {
+            assertEquals(expected++, value);
+        }
+        assertEquals(1000, expected);
+    }
+
+    @Test
+    public void testListViewIsUnmodifiable() {
+        List<String> list = PersistentVector.<String>empty().append("a").append("b").asList();
+
+        assertEquals(List.of("a", "b"), list);
+        assertThrows(UnsupportedOperationException.class, () -> list.add("c"));
+    }
+
+    @Test
+    public void testCartSnapshotIsStableWhileCartGrows() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.addItem("Laptop", 999.99, 1);
+        CartSnapshot before = cart.getSnapshot();
+        List<CartItem> items = cart.getItems();
+
+        for (int i = 0; i < 100; i++) {
+            cart.addItem("Cable " + i, 1.00, 1);
+        }
+
+        assertEquals(1, before.getItemCount());
+        assertEquals(1, items.size());
+        assertEquals(101, cart.getItems().size());
+        assertEquals(1099.99, cart.calculateSubtotal(), 0.001);
+    }
+}
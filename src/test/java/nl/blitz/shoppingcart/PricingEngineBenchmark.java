@@ -0,0 +1,42 @@
+package nl.blitz.shoppingcart;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Manual benchmark for {@link PricingEngine} scaling across cores. Not run as part of the test
+ * suite; run the main method directly.
+ */
+public class PricingEngineBenchmark {
+    private static final int LINES = 4_000_000;
+    private static final int ITERATIONS = 50;
+
+    public static void main(String[] args) {
+        double[] prices = new double[LINES];
+        int[] quantities = new int[LINES];
+        Random random = new Random(7);
+        for (int i = 0; i < LINES; i++) {
+            prices[i] = Math.round(random.nextDouble() * 100_000) / 100.0;
+            quantities[i] = 1 + random.nextInt(100);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            PricingEngine engine = new PricingEngine(parallelism == 1 ? Integer.MAX_VALUE : 1, pool);
+            run(engine, prices, quantities);
+            long start = System.nanoTime();
+            double result = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                result = run(engine, prices, quantities);
+            }
+            double millis = (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+            System.out.printf("threads=%d  %.2f ms/op  subtotal=%.2f%n", parallelism, millis, result);
+            pool.shutdown();
+        }
+    }
+
+    private static double run(PricingEngine engine, double[] prices, int[] quantities) {
+        return engine.subtotal(prices, quantities, prices.length);
+    }
+}
@@ -0,0 +1,45 @@
+package nl.blitz.shoppingcart;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PricingEngineTest {
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    public void shutDownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testParallelAndSequentialResultsAreIdentical() {
+        int size = 200_000;
+        double[] prices = new double[size];
+        int[] quantities = new int[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            prices[i] = Math.round(random.nextDouble() * 100_000) / 100.0;
+            quantities[i] = 1 + random.nextInt(50);
+        }
+
+        double sequential = new PricingEngine(Integer.MAX_VALUE, ForkJoinPool.commonPool())
+                .subtotal(prices, quantities, size);
+        double parallel = new PricingEngine(1, pool)
+                .subtotal(prices, quantities, size);
+
+        assertEquals(Double.doubleToLongBits(sequential), Double.doubleToLongBits(parallel));
+    }
+
+    @Test
+    public void testCompensatedSumKeepsSmallLines() {
+        double[] prices = {1e16, 1.0, -1e16, 1.0};
+        int[] quantities = {1, 1, 1, 1};
+
+        assertEquals(2.0, new PricingEngine().subtotal(prices, quantities, prices.length), 0.0);
+    }
+}
@@ -0,0 +1,105 @@
+package nl.blitz.shoppingcart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Manual benchmark pricing carts against 10k active promotions, compiled versus evaluating
+ * every rule. Not run as part of the test suite; run the main method directly.
+ */
+public class PromotionEngineBenchmark {
+    private static final int RULES = 10_000;
+    private static final int PRODUCTS = 20_000;
+    private static final int CART_LINES = 50;
+    private static final int CARTS = 1_000;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        Random random = new Random(11);
+        List<Promotion> promotions = new ArrayList<>();
+        for (int i = 0; i < RULES; i++) {
+            boolean stackable = random.nextBoolean();
+            switch (i % 4) {
+                case 0:
+                    promotions.add(Promotion.cartPercentage("r" + i, null, random.nextInt(5), stackable));
+                    break;
+                case 1:
+                    promotions.add(Promotion.productPercentage("r" + i, null,
+                            "product-" + random.nextInt(PRODUCTS), 1 + random.nextInt(20), stackable));
+                    break;
+                case 2:
+                    promotions.add(Promotion.minimumSpend("r" + i, null,
+                            random.nextInt(100_000), random.nextInt(50), stackable));
+                    break;
+                default:
+                    double base = random.nextInt(50_000);
+                    promotions.add(Promotion.tiered("r" + i, null,
+                            new double[] {base, base * 2 + 1, base * 4 + 2}, new double[] {1, 2, 3}, stackable));
+            }
+        }
+
+        CartSnapshot[] carts = new CartSnapshot[CARTS];
+        double[] subtotals = new double[CARTS];
+        for (int c = 0; c < CARTS; c++) {
+            CartSnapshot cart = CartSnapshot.empty();
+            double subtotal = 0;
+            for (int line = 0; line < CART_LINES; line++) {
+                double price = Math.round(random.nextDouble() * 200_000) / 100.0;
+                cart = cart.withItem(new CartItem("product-" + random.nextInt(PRODUCTS), price, 1));
+                subtotal += price;
+            }
+            carts[c] = cart;
+            subtotals[c] = subtotal;
+        }
+
+        long compileStart = System.nanoTime();
+        PromotionEngine engine = new PromotionEngine(promotions);
+        System.out.printf("compile %d rules: %.2f ms%n", RULES, (System.nanoTime() - compileStart) / 1e6);
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            double compiled = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (int c = 0; c < CARTS; c++) {
+                    compiled += engine.discount(carts[c], subtotals[c], List.of());
+                }
+            }
+            double compiledMicros = (System.nanoTime() - start) / 1e3 / (ITERATIONS * CARTS);
+
+            start = System.nanoTime();
+            double naive = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (int c = 0; c < CARTS; c++) {
+                    naive += evaluateEveryRule(promotions, carts[c], subtotals[c]);
+                }
+            }
+            double naiveMicros = (System.nanoTime() - start) / 1e3 / (ITERATIONS * CARTS);
+
+            System.out.printf("compiled %.2f us/cart  every rule %.2f us/cart  (checksums %.2f / %.2f)%n",
+                    compiledMicros, naiveMicros, compiled, naive);
+        }
+    }
+
+    private static double evaluateEveryRule(List<Promotion> promotions, CartSnapshot cart, double subtotal) {
+        double stackable = 0;
+        double exclusive = 0;
+        for (Promotion promotion : promotions) {
+            double productTotal = 0;
+            if (promotion.getProductName() != null) {
+                for (CartItem item : cart.getItems()) {
+                    if (item.getProductName().equals(promotion.getProductName())) {
+                        productTotal += item.getPrice() * item.getQuantity();
+                    }
+                }
+            }
+            double amount = promotion.amountFor(subtotal, productTotal);
+            if (promotion.isStackable()) {
+                stackable += amount;
+            } else {
+                exclusive = Math.max(exclusive, amount);
+            }
+        }
+        return Math.min(subtotal, stackable + exclusive);
+    }
+}
@@ -0,0 +1,94 @@
+package nl.blitz.shoppingcart;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PromotionEngineTest {
+    private static CartSnapshot cart(Object... nameAndPrice) {
+        CartSnapshot cart = CartSnapshot.empty();
+        for (int i = 0; i < nameAndPrice.length; i += 2) {
+            cart = cart.withItem(new CartItem((String) nameAndPrice[i], (Double) nameAndPrice[i + 1], 1));
+        }
+        return cart;
+    }
+
+    @Test
+    public void testStackablePromotionsAddUpAndBestExclusiveWins() {
+        PromotionEngine engine = new PromotionEngine(List.of(
+                Promotion.productPercentage("p1", null, "Laptop", 10.0, true),
+                Promotion.minimumSpend("m1", null, 500.0, 25.0, true),
+                Promotion.cartPercentage("c1", null, 5.0, false),
+                Promotion.cartPercentage("c2", null, 8.0, false)));
+        CartSnapshot cart = cart("Laptop", 800.0, "Mouse", 200.0);
+
+        // 10% of the laptop + 25 off + the better of 5% and 8% of the cart
+        assertEquals(80.0 + 25.0 + 80.0, engine.discount(cart, 1000.0, List.of()), 1e-9);
+    }
+
+    @Test
+    public void testTieredPromotionUsesHighestTierReached() {
+        PromotionEngine engine = new PromotionEngine(List.of(
+                Promotion.tiered("t1", null, new double[] {100, 500, 1000}, new double[] {2, 5, 10}, true)));
+
+        assertEquals(0.0, engine.discount(cart("A", 50.0), 50.0, List.of()), 1e-9);
+        assertEquals(2.0, engine.discount(cart("A", 100.0), 100.0, List.of()), 1e-9);
+        assertEquals(35.0, engine.discount(cart("A", 700.0), 700.0, List.of()), 1e-9);
+        assertEquals(150.0, engine.discount(cart("A", 1500.0), 1500.0, List.of()), 1e-9);
+    }
+
+    @Test
+    public void testCodeGatedPromotionsOnlyApplyWithTheirCode() {
+        PromotionEngine engine = new PromotionEngine(List.of(
+                Promotion.cartPercentage("summer", "SUMMER10", 10.0, false),
+                Promotion.productPercentage("mouse", "MOUSE50", "Mouse", 50.0, true)));
+        CartSnapshot cart = cart("Laptop", 800.0, "Mouse", 200.0);
+
+        assertTrue(engine.isKnownCode("SUMMER10"));
+        assertFalse(engine.isKnownCode("WINTER10"));
+        assertEquals(0.0, engine.discount(cart, 1000.0, List.of()), 1e-9);
+        assertEquals(100.0, engine.discount(cart, 1000.0, List.of("SUMMER10")), 1e-9);
+        assertEquals(200.0, engine.discount(cart, 1000.0, List.of("SUMMER10", "MOUSE50")), 1e-9);
+    }
+
+    @Test
+    public void testDiscountNeverExceedsSubtotal() {
+        PromotionEngine engine = new PromotionEngine(List.of(
+                Promotion.minimumSpend("m1", null, 10.0, 50.0, true),
+                Promotion.cartPercentage("c1", null, 90.0, true)));
+
+        assertEquals(20.0, engine.discount(cart("A", 20.0), 20.0, List.of()), 1e-9);
+    }
+
+    @Test
+    public void testCartStacksDiscountCodes() {
+        ShoppingCart cart = new ShoppingCart(new PricingEngine(), (id, method, amount) -> null);
+        cart.setPromotionEngine(new PromotionEngine(List.of(
+                Promotion.cartPercentage("vip", "VIP30", 30.0, false),
+                Promotion.minimumSpend("loyal", "LOYAL", 100.0, 15.0, true))));
+        cart.addItem("Laptop", 1000.0, 1);
+
+        assertFalse(cart.applyDiscount("SUMMER10"));
+        assertTrue(cart.applyDiscount("VIP30"));
+        assertTrue(cart.applyDiscount("LOYAL"));
+
+        assertEquals(List.of("VIP30", "LOYAL"), cart.getAppliedDiscountCodes());
+        assertEquals("LOYAL", cart.getAppliedDiscountCode());
+        assertEquals(315.0, cart.calculateDiscountAmount(), 1e-9);
+        assertEquals(685.0, cart.calculateTotal(), 1e-9);
+    }
+
+    @Test
+    public void testLastBuiltInCodeWinsAsBefore() {
+        ShoppingCart cart = new ShoppingCart(new PricingEngine(), (id, method, amount) -> null);
+        cart.addItem("Laptop", 1000.0, 1);
+
+        assertTrue(cart.applyDiscount("VIP30"));
+        assertTrue(cart.applyDiscount("SUMMER10"));
+
+        assertEquals(List.of("SUMMER10"), cart.getAppliedDiscountCodes());
+        assertEquals(100.0, cart.calculateDiscountAmount(), 1e-9);
+    }
+}
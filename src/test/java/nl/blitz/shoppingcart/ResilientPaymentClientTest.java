@@ -0,0 +1,119 @@
+package nl.blitz.shoppingcart;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResilientPaymentClientTest {
+
+    @Test
+    public void testHedgedAttemptWinsOverSlowPrimary() {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<PaymentResult> neverAnswers = new CompletableFuture<>();
+        PaymentGateway gateway = (transactionId, method, amount) -> calls.incrementAndGet() == 1
+                ? neverAnswers
+                : CompletableFuture.completedFuture(new PaymentResult(true, transactionId, "Payment successful"));
+        ResilientPaymentClient client = new ResilientPaymentClient(
+                gateway, Duration.ofMillis(500), new CircuitBreaker(3, Duration.ofSeconds(10)));
+
+        PaymentResult result = client.charge("TXN-1", "CREDIT_CARD", 10.0).join();
+
+        assertTrue(result.isSuccess());
+        assertEquals("TXN-1", result.getTransactionId());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testDeadlineAndCircuitBreakerFailFast() {
+        AtomicInteger calls = new AtomicInteger();
+        PaymentGateway hanging = (transactionId, method, amount) -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        };
+        ResilientPaymentClient client = new ResilientPaymentClient(
+                hanging, Duration.ofMillis(50), new CircuitBreaker(2, Duration.ofMinutes(1)));
+
+        assertEquals("Payment timed out", client.charge("TXN-1", "CREDIT_CARD", 10.0).join().getMessage());
+        assertEquals("Payment timed out", client.charge("TXN-2", "CREDIT_CARD", 10.0).join().getMessage());
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitBreaker().getState());
+
+        int callsBefore = calls.get();
+        PaymentResult rejected = client.charge("TXN-3", "CREDIT_CARD", 10.0).join();
+        assertFalse(rejected.isSuccess());
+        assertEquals("Payment gateway unavailable", rejected.getMessage());
+        assertEquals(callsBefore, calls.get());
+    }
+
+    @Test
+    public void testCircuitBreakerHalfOpensAfterOpenDuration() {
+        long[] now = {0};
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofSeconds(5), () -> now[0]);
+
+        breaker.recordFailure();
+        assertFalse(breaker.allowRequest());
+
+        now[0] = Duration.ofSeconds(5).toNanos();
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testCartReportsGatewayOutcome() {
+        PaymentGateway declining = (transactionId, method, amount) ->
+                CompletableFuture.completedFuture(new PaymentResult(false, null, "Card declined"));
+        ShoppingCart cart = new ShoppingCart(declining);
+
+        PaymentResult result = cart.processPayment("CREDIT_CARD", 10.0);
+
+        assertFalse(result.isSuccess());
+        assertEquals("Card declined", cart.getLastPaymentResult().getMessage());
+    }
+
+    @Test
+    public void testLateSuccessAfterTimeoutIsRefundedOnce() throws Exception {
+        List<CompletableFuture<PaymentResult>> attempts = new CopyOnWriteArrayList<>();
+        List<String> refunds = new CopyOnWriteArrayList<>();
+        PaymentGateway slow = new PaymentGateway() {
+            @Override
+            public CompletableFuture<PaymentResult> charge(String transactionId, String method, double amount) {
+                CompletableFuture<PaymentResult> attempt = new CompletableFuture<>();
+                attempts.add(attempt);
+                return attempt;
+            }
+
+            @Override
+            public CompletableFuture<PaymentResult> refund(String transactionId, double amount) {
+                refunds.add(transactionId);
+                return CompletableFuture.completedFuture(new PaymentResult(true, transactionId, "Refunded"));
+            }
+        };
+        ResilientPaymentClient client = new ResilientPaymentClient(
+                slow, Duration.ofMillis(50), new CircuitBreaker(5, Duration.ofMinutes(1)));
+
+        assertEquals("Payment timed out", client.charge("TXN-1", "CREDIT_CARD", 10.0).join().getMessage());
+        assertTrue(refunds.isEmpty());
+
+        // Both the primary and the hedged attempt go through after all
+        for (CompletableFuture<PaymentResult> attempt : attempts) {
+            attempt.complete(new PaymentResult(true, "TXN-1", "Payment successful"));
+        }
+        assertEquals(List.of("TXN-1"), refunds);
+    }
+
+    @Test
+    public void testDefaultCartsShareOneClient() {
+        PaymentGateway gateway = new ShoppingCart().getPaymentGateway();
+
+        assertTrue(gateway instanceof ResilientPaymentClient);
+        assertSame(gateway, new ShoppingCart().getPaymentGateway());
+    }
+}
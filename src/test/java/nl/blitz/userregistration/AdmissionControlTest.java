@@ -0,0 +1,76 @@
+package nl.blitz.userregistration;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testRateLimiterRefillsLazily() {
+        AtomicLong now = new AtomicLong(0);
+        RateLimiter limiter = new RateLimiter(3, Duration.ofSeconds(1), now::get);
+
+        assertTrue(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a"));
+        assertFalse(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("b"));
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertTrue(limiter.tryAcquire("a"));
+        assertFalse(limiter.tryAcquire("a"));
+    }
+
+    @Test
+    public void testIdleBucketsAreSweptIncrementallyWithoutResettingLimits() {
+        AtomicLong now = new AtomicLong(0);
+        RateLimiter limiter = new RateLimiter(1, Duration.ofHours(1), now::get);
+        for (int i = 0; i < 1_000; i++) {
+            limiter.tryAcquire("idle-" + i);
+        }
+        now.addAndGet(Duration.ofHours(2).toNanos());
+        assertTrue(limiter.tryAcquire("hot"));
+
+        for (int i = 0; i < 5_000; i++) {
+            assertFalse(limiter.tryAcquire("hot"));
+        }
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    public void testRegistrationIsRejectedPerEmailAndPerCaller() {
+        UserRegistration registration = new UserRegistration();
+        registration.setAdmissionControl(new AdmissionControl(
+                new RateLimiter(2, Duration.ofHours(1)),
+                new RateLimiter(3, Duration.ofHours(1)),
+                4, 4));
+
+        assertFalse(registration.registerUser("caller-1", "user@example.com", "weak").isSuccess());
+        assertTrue(registration.registerUser("caller-1", "USER@example.com", "SecurePass123").isSuccess());
+        RegistrationResult limitedEmail = registration.registerUser("caller-2", "user@example.com", "SecurePass123");
+        assertEquals("Too many attempts, please try again later", limitedEmail.getMessage());
+
+        assertTrue(registration.registerUser("caller-1", "other@example.com", "SecurePass123").isSuccess());
+        RegistrationResult limitedCaller = registration.registerUser("caller-1", "third@example.com", "SecurePass123");
+        assertEquals("Too many attempts, please try again later", limitedCaller.getMessage());
+        assertFalse(registration.userExists("third@example.com"));
+    }
+
+    @Test
+    public void testStageLimitRejectsWhenNoPermitIsAvailable() {
+        AdmissionControl admission = new AdmissionControl(null, null, 1, 0);
+        UserRegistration registration = new UserRegistration();
+        registration.setAdmissionControl(admission);
+
+        RegistrationResult result = registration.registerUser("user@example.com", "SecurePass123");
+
+        assertFalse(result.isSuccess());
+        assertEquals("Service is busy, please try again later", result.getMessage());
+        assertFalse(registration.userExists("user@example.com"));
+        assertTrue(admission.tryAcquireHashing());
+    }
+}
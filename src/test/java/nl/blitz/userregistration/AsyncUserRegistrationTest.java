@@ -0,0 +1,65 @@
+package nl.blitz.userregistration;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncUserRegistrationTest {
+
+    @Test
+    public void testAsyncRegistrationAndActivation() throws Exception {
+        UserRegistration registration = new UserRegistration();
+        AsyncUserRegistration async = new AsyncUserRegistration(registration);
+
+        RegistrationResult result = async.registerUser("user@example.com", "SecurePass123")
+                .get(5, TimeUnit.SECONDS);
+        assertTrue(result.isSuccess());
+        assertEquals("user@example.com", registration.getLastVerificationEmailSentTo());
+
+        boolean activated = async.activateAccount("user@example.com", result.getVerificationToken())
+                .get(5, TimeUnit.SECONDS);
+        assertTrue(activated);
+        assertTrue(registration.isAccountActivated("user@example.com"));
+        assertEquals("user@example.com", registration.getLastWelcomeEmailSentTo());
+    }
+
+    @Test
+    public void testAsyncRegistrationReportsValidationFailureImmediately() {
+        AsyncUserRegistration async = new AsyncUserRegistration(new UserRegistration());
+
+        RegistrationResult result = async.registerUser("invalid-email", "SecurePass123").join();
+
+        assertFalse(result.isSuccess());
+        assertEquals("Invalid email format", result.getMessage());
+    }
+
+    @Test
+    public void testConcurrentActivationsUseAStoredTokenOnce() {
+        UserRegistration registration = new UserRegistration();
+        registration.setEmailDelayMillis(0);
+        String token = registration.registerUser("user@example.com", "SecurePass123").getVerificationToken();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> attempts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            attempts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return registration.confirmActivation("user@example.com", token);
+            }));
+        }
+        start.countDown();
+
+        assertEquals(1, attempts.stream().filter(CompletableFuture::join).count());
+        assertTrue(registration.getVerificationToken(token).isUsed());
+    }
+}
@@ -0,0 +1,82 @@
+package nl.blitz.userregistration;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Manual benchmark for {@link BreachedPasswordScreen} checks against a corpus of random
+ * hashes, for passwords that are not in it (the common case at registration) and for hashes
+ * that are. Not run as part of the test suite; run the main method directly.
+ */
+public class BreachedPasswordScreenBenchmark {
+    private static final int HASHES = 20_000_000;
+    private static final int CHECKS = 2_000_000;
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("breached");
+        Path input = dir.resolve("hashes.txt");
+        Path output = dir.resolve("breached.bin");
+        try {
+            // Evenly spaced hashes come out sorted without a sort step
+            try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.US_ASCII)) {
+                long step = Long.divideUnsigned(-1L, HASHES);
+                for (long i = 0; i < HASHES; i++) {
+                    writer.write(String.format("%016X%016X%08X%n", i * step, i * 0x9E3779B97F4A7C15L, i));
+                }
+            }
+            long start = System.nanoTime();
+            BreachedPasswordFileBuilder.build(input, output, 10);
+            System.out.printf("built %d hashes in %d ms, %d MB%n", HASHES,
+                    (System.nanoTime() - start) / 1_000_000, Files.size(output) >> 20);
+            BreachedPasswordScreen screen = BreachedPasswordScreen.open(output);
+
+            String[] passwords = new String[1 << 20];
+            for (int i = 0; i < passwords.length; i++) {
+                passwords[i] = "Candidate-" + i + "-Passw0rd";
+            }
+            byte[] hash = new byte[20];
+            for (int round = 0; round < 3; round++) {
+                int breached = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < CHECKS; i++) {
+                    if (screen.isBreached(passwords[i & (passwords.length - 1)])) {
+                        breached++;
+                    }
+                }
+                long negative = System.nanoTime() - start;
+
+                int found = 0;
+                start = System.nanoTime();
+                long step = Long.divideUnsigned(-1L, HASHES);
+                for (int i = 0; i < CHECKS; i++) {
+                    long index = (i * 7919L) % HASHES;
+                    putLong(hash, 0, index * step);
+                    putLong(hash, 8, index * 0x9E3779B97F4A7C15L);
+                    for (int b = 0; b < 4; b++) {
+                        hash[16 + b] = (byte) (index >>> (24 - 8 * b));
+                    }
+                    if (screen.isBreachedHash(hash)) {
+                        found++;
+                    }
+                }
+                long positive = System.nanoTime() - start;
+                System.out.printf("negative %.0f ns/check (%d false hits)  positive %.0f ns/check (%d found)%n",
+                        negative / (double) CHECKS, breached, positive / (double) CHECKS, found);
+            }
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package nl.blitz.userregistration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BreachedPasswordScreenTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testBreachedPasswordsAreFound() throws IOException {
+        List<String> lines = new ArrayList<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] hash = new byte[20];
+            random.nextBytes(hash);
+            lines.add(hex(hash) + ":" + (1 + random.nextInt(1000)));
+        }
+        lines.add(sha1Hex("Password123") + ":42");
+        lines.add(sha1Hex("Summer2024!"));
+        lines.add(sha1Hex("Summer2024!"));
+        Collections.sort(lines);
+        Path input = dir.resolve("hashes.txt");
+        Path output = dir.resolve("breached.bin");
+        Files.write(input, lines);
+
+        assertEquals(10_002, BreachedPasswordFileBuilder.build(input, output, 10));
+        BreachedPasswordScreen screen = BreachedPasswordScreen.open(output);
+
+        assertEquals(10_002, screen.size());
+        assertTrue(screen.isBreached("Password123"));
+        assertTrue(screen.isBreached("Summer2024!"));
+        assertFalse(screen.isBreached("correct-Horse-battery-9"));
+        for (String line : lines.subList(0, 100)) {
+            byte[] hash = new byte[20];
+            for (int i = 0; i < 20; i++) {
+                hash[i] = (byte) Integer.parseInt(line.substring(2 * i, 2 * i + 2), 16);
+            }
+            assertTrue(screen.isBreachedHash(hash));
+        }
+    }
+
+    @Test
+    public void testUnsortedInputIsRejected() throws IOException {
+        Path input = dir.resolve("unsorted.txt");
+        Files.write(input, List.of(sha1Hex("b"), "0000000000000000000000000000000000000000"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> BreachedPasswordFileBuilder.build(input, dir.resolve("out.bin"), 10));
+    }
+
+    @Test
+    public void testRebuildingLeavesOpenScreensIntact() throws IOException {
+        Path input = dir.resolve("hashes.txt");
+        Path output = dir.resolve("breached.bin");
+        Files.write(input, List.of(sha1Hex("Password123")));
+        BreachedPasswordFileBuilder.build(input, output, 10);
+        BreachedPasswordScreen old = BreachedPasswordScreen.open(output);
+
+        List<String> lines = new ArrayList<>(List.of(sha1Hex("Summer2024!"), sha1Hex("Winter2024!")));
+        Collections.sort(lines);
+        Files.write(input, lines);
+        BreachedPasswordFileBuilder.build(input, output, 10);
+        BreachedPasswordScreen reloaded = BreachedPasswordScreen.open(output);
+
+        assertTrue(old.isBreached("Password123"));
+        assertFalse(old.isBreached("Summer2024!"));
+        assertEquals(2, reloaded.size());
+        assertTrue(reloaded.isBreached("Summer2024!"));
+        assertFalse(reloaded.isBreached("Password123"));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of("breached.bin", "hashes.txt"),
+                    files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testRegistrationRejectsBreachedPasswords() throws IOException {
+        Path input = dir.resolve("hashes.txt");
+        Path output = dir.resolve("breached.bin");
+        Files.write(input, List.of(sha1Hex("Password123")));
+        BreachedPasswordFileBuilder.build(input, output, 10);
+        UserRegistration registration = new UserRegistration();
+        registration.setPasswordScreen(BreachedPasswordScreen.open(output));
+
+        assertFalse(registration.isValidPassword("Password123"));
+        assertTrue(registration.isValidPassword("Tr0ubadour-Staple"));
+        RegistrationResult result = registration.registerUser("user@example.com", "Password123");
+        assertFalse(result.isSuccess());
+        assertEquals("Password does not meet requirements", result.getMessage());
+    }
+
+    private static String sha1Hex(String password) {
+        return hex(BreachedPasswordScreen.newSha1().digest(password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format(Locale.ROOT, "%02X", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package nl.blitz.userregistration;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Manual benchmark comparing {@link DomainBlocklist} with a {@code HashSet<String>} of the same
+ * domains, which has to lowercase and cut a substring per lookup. Reports lookup cost and
+ * retained heap. Not run as part of the test suite; run the main method directly.
+ */
+public class DomainBlocklistBenchmark {
+    private static final int DOMAINS = 300_000;
+    private static final int LOOKUPS = 5_000_000;
+    private static final String[] SUFFIXES = {"com", "net", "org", "io", "co.uk", "de", "nl", "xyz"};
+
+    public static void main(String[] args) {
+        List<String> entries = entries();
+        Random random = new Random(23);
+        String[] emails = new String[1 << 16];
+        for (int i = 0; i < emails.length; i++) {
+            String domain = i % 4 == 0
+                    ? entries.get(random.nextInt(DOMAINS)).replace("*.", "mx.")
+                    : "Mail" + random.nextInt() + ".Example.com";
+            emails[i] = "user" + i + "@" + domain;
+        }
+        entries = null;
+
+        // Each structure is built from its own copy of the entries, so retained strings count
+        long before = usedHeap();
+        DomainBlocklist blocklist = DomainBlocklist.of(entries());
+        long trieHeap = usedHeap() - before;
+        before = usedHeap();
+        Set<String> set = new HashSet<>(entries());
+        long setHeap = usedHeap() - before;
+        System.out.printf("trie %d KB, hash set %d KB%n", trieHeap >> 10, setHeap >> 10);
+
+        for (int round = 0; round < 3; round++) {
+            int blocked = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                String email = emails[i & (emails.length - 1)];
+                if (blocklist.isBlocked(email, email.indexOf('@') + 1, email.length())) {
+                    blocked++;
+                }
+            }
+            long trie = System.nanoTime() - start;
+
+            int setBlocked = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                String email = emails[i & (emails.length - 1)];
+                String domain = email.substring(email.indexOf('@') + 1).toLowerCase(Locale.ROOT);
+                if (set.contains(domain) || set.contains("*." + domain.substring(domain.indexOf('.') + 1))) {
+                    setBlocked++;
+                }
+            }
+            long hashSet = System.nanoTime() - start;
+            System.out.printf("trie %.0f ns/lookup (%d blocked)  hash set %.0f ns/lookup (%d blocked)%n",
+                    trie / (double) LOOKUPS, blocked, hashSet / (double) LOOKUPS, setBlocked);
+        }
+        System.out.println(blocklist.size() + set.size());
+    }
+
+    private static List<String> entries() {
+        Random random = new Random(17);
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < DOMAINS; i++) {
+            String domain = Long.toString(random.nextLong() & Long.MAX_VALUE, 36) + "."
+                    + SUFFIXES[random.nextInt(SUFFIXES.length)];
+            entries.add(i % 10 == 0 ? "*." + domain : domain);
+        }
+        return entries;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
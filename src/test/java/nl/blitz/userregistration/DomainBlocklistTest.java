@@ -0,0 +1,64 @@
+package nl.blitz.userregistration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DomainBlocklistTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testExactAndWildcardEntries() {
+        DomainBlocklist blocklist = DomainBlocklist.of(List.of(
+                "mailinator.com", "*.mailinator.com", "*.tempmail.dev", "Guerrilla.ORG", "example.co.uk"));
+
+        assertEquals(5, blocklist.size());
+        assertTrue(blocklist.isBlocked("mailinator.com"));
+        assertTrue(blocklist.isBlocked("eu.mailinator.com"));
+        assertTrue(blocklist.isBlocked("MAILINATOR.COM."));
+        assertTrue(blocklist.isBlocked("x.y.tempmail.dev"));
+        assertFalse(blocklist.isBlocked("tempmail.dev"));
+        assertTrue(blocklist.isBlocked("guerrilla.org"));
+        assertFalse(blocklist.isBlocked("mail.guerrilla.org"));
+        assertFalse(blocklist.isBlocked("co.uk"));
+        assertFalse(blocklist.isBlocked("notmailinator.com"));
+        assertFalse(blocklist.isBlocked("com"));
+        assertFalse(blocklist.isBlocked("example.com"));
+        assertTrue(blocklist.isBlocked("user@example.co.uk", 5, 18));
+    }
+
+    @Test
+    public void testLoadsFromFileAndRejectsInvalidEntries() throws IOException {
+        Path file = dir.resolve("blocklist.txt");
+        Files.write(file, List.of("# disposable providers", "", "  yopmail.com  ", "*.33mail.com"));
+
+        DomainBlocklist blocklist = DomainBlocklist.load(file);
+
+        assertEquals(2, blocklist.size());
+        assertTrue(blocklist.isBlocked("yopmail.com"));
+        assertTrue(blocklist.isBlocked("alias.33mail.com"));
+        assertThrows(IllegalArgumentException.class, () -> DomainBlocklist.of(List.of("bad..com")));
+    }
+
+    @Test
+    public void testRegistrationRejectsBlockedDomainsAndPicksUpSwaps() {
+        UserRegistration registration = new UserRegistration();
+        registration.setDomainBlocklist(DomainBlocklist.of(List.of("*.disposable.io", "disposable.io")));
+
+        assertFalse(registration.isValidEmail("user@disposable.io"));
+        assertFalse(registration.isValidEmail("user@inbox.Disposable.io"));
+        assertTrue(registration.isValidEmail("user@example.com"));
+        assertFalse(registration.registerUser("user@disposable.io", "Password123").isSuccess());
+
+        registration.setDomainBlocklist(DomainBlocklist.of(List.of("example.com")));
+        assertTrue(registration.isValidEmail("user@disposable.io"));
+        assertFalse(registration.isValidEmail("user@example.com"));
+    }
+}
@@ -0,0 +1,96 @@
+package nl.blitz.userregistration;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegistrationEventFeedTest {
+
+    @Test
+    public void testSubscriberReceivesTypedEventsInBatches() throws Exception {
+        UserRegistration registration = new UserRegistration();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        registration.getEventFeed().batches(10).subscribe(subscriber);
+
+        registration.registerUser("invalid-email", "SecurePass123");
+        String token = registration.registerUser("user@example.com", "SecurePass123").getVerificationToken();
+        registration.activateAccount("user@example.com", token);
+        registration.getEventFeed().close();
+
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        List<RegistrationEvent.Type> types = new ArrayList<>();
+        for (List<RegistrationEvent> batch : subscriber.batches) {
+            assertTrue(batch.size() <= 10);
+            for (RegistrationEvent event : batch) {
+                types.add(event.getType());
+            }
+        }
+        assertEquals(List.of(
+                RegistrationEvent.Type.VALIDATION_FAILED,
+                RegistrationEvent.Type.TOKEN_GENERATED,
+                RegistrationEvent.Type.REGISTERED,
+                RegistrationEvent.Type.ACTIVATED), types);
+    }
+
+    @Test
+    public void testSlowSubscriberOnlyGetsRequestedBatchesAndBoundedBuffer() throws Exception {
+        RegistrationEventFeed feed = new RegistrationEventFeed(Runnable::run, 4);
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        feed.batches(3).subscribe(subscriber);
+
+        for (int i = 0; i < 10; i++) {
+            feed.publish(new RegistrationEvent(RegistrationEvent.Type.REGISTERED, "u" + i + "@example.com", "", null));
+        }
+
+        // The first event is delivered as soon as it arrives, the next four fill the buffer
+        assertEquals(1, subscriber.batches.size());
+        assertEquals(1, subscriber.batches.get(0).size());
+        assertEquals(5, feed.getDroppedEvents());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        feed.close();
+
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        int delivered = subscriber.batches.stream().mapToInt(List::size).sum();
+        assertEquals(5, delivered);
+        assertTrue(subscriber.batches.stream().allMatch(batch -> batch.size() <= 3));
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<List<RegistrationEvent>> {
+        private final long initialDemand;
+        private final List<List<RegistrationEvent>> batches = new ArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+
+        CollectingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialDemand);
+        }
+
+        @Override
+        public synchronized void onNext(List<RegistrationEvent> batch) {
+            batches.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
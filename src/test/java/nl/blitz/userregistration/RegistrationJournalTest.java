@@ -0,0 +1,169 @@
+package nl.blitz.userregistration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegistrationJournalTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRecoveryRebuildsUsersAndTokens() throws Exception {
+        Path file = tempDir.resolve("registration.journal");
+        String token;
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(5), 16)) {
+            UserRegistration registration = new UserRegistration(journal);
+            token = registration.registerUser("first@example.com", "SecurePass123").getVerificationToken();
+            registration.registerUser("second@example.com", "SecurePass456");
+            assertTrue(registration.activateAccount("first@example.com", token));
+            registration.syncJournal().get();
+        }
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(5), 16)) {
+            UserRegistration recovered = new UserRegistration(journal);
+
+            assertEquals(2, recovered.getAllUsers().size());
+            assertTrue(recovered.isAccountActivated("first@example.com"));
+            assertFalse(recovered.isAccountActivated("second@example.com"));
+            assertTrue(recovered.verifyPassword("SecurePass123",
+                    recovered.getUserByEmail("first@example.com").getHashedPassword()));
+            assertTrue(recovered.getVerificationToken(token).isUsed());
+            assertFalse(recovered.verifyToken(token, "first@example.com"));
+        }
+    }
+
+    @Test
+    public void testSpentSignedTokensStaySpentAfterRecovery() throws Exception {
+        Path file = tempDir.resolve("signed.journal");
+        byte[] key = TokenSigner.generateKey();
+        String token;
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(5), 16)) {
+            UserRegistration registration = new UserRegistration(journal);
+            registration.setTokenSigner(new TokenSigner(key));
+            token = registration.registerUser("user@example.com", "SecurePass123").getVerificationToken();
+            assertTrue(registration.activateAccount("user@example.com", token));
+            registration.syncJournal().get();
+        }
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(5), 16)) {
+            UserRegistration recovered = new UserRegistration(journal);
+            recovered.setTokenSigner(new TokenSigner(key));
+
+            assertFalse(recovered.verifyToken(token, "user@example.com"));
+            VerificationToken view = recovered.getVerificationToken(token);
+            assertEquals("user@example.com", view.getEmail());
+            assertTrue(view.isUsed());
+        }
+    }
+
+    @Test
+    public void testTornTailIsTruncatedOnOpen() throws Exception {
+        Path file = tempDir.resolve("torn.journal");
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(5), 16)) {
+            UserRegistration registration = new UserRegistration(journal);
+            registration.registerUser("user@example.com", "SecurePass123");
+            registration.syncJournal().get();
+        }
+        long committedSize = Files.size(file);
+        Files.write(file, new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(5), 16)) {
+            UserRegistration recovered = new UserRegistration(journal);
+            assertTrue(recovered.userExists("user@example.com"));
+            assertEquals(committedSize, Files.size(file));
+        }
+    }
+
+    @Test
+    public void testPartialWriteIsRolledBackBeforeLaterBatches() throws Exception {
+        Path file = tempDir.resolve("partial.journal");
+        AtomicBoolean failNext = new AtomicBoolean();
+        RegistrationJournal.BatchWriter flaky = (channel, records) -> {
+            if (failNext.getAndSet(false)) {
+                // Half of the first record reaches the file before the device gives up
+                ByteBuffer first = records[0];
+                channel.write(first.slice().limit(first.remaining() / 2));
+                throw new IOException("Injected write failure");
+            }
+            return channel.write(records);
+        };
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(1), 16, flaky)) {
+            journal.append(JournalEntry.userActivated("first@example.com", true)).get();
+            failNext.set(true);
+            CompletableFuture<Void> failed = journal.append(JournalEntry.userActivated("lost@example.com", true));
+            assertThrows(ExecutionException.class, failed::get);
+            journal.append(JournalEntry.userActivated("third@example.com", true)).get();
+        }
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(1), 16)) {
+            List<String> replayed = new ArrayList<>();
+            journal.replay(entry -> replayed.add(entry.getKey()));
+            assertEquals(List.of("first@example.com", "third@example.com"), replayed);
+        }
+    }
+
+    @Test
+    public void testSyncFailsAfterALostBatch() throws Exception {
+        Path file = tempDir.resolve("lost.journal");
+        AtomicBoolean failNext = new AtomicBoolean();
+        RegistrationJournal.BatchWriter flaky = (channel, records) -> {
+            if (failNext.getAndSet(false)) {
+                throw new IOException("Injected write failure");
+            }
+            return channel.write(records);
+        };
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(1), 16, flaky)) {
+            failNext.set(true);
+            CompletableFuture<Void> lost = journal.append(JournalEntry.userActivated("lost@example.com", true));
+            assertThrows(ExecutionException.class, lost::get);
+
+            assertThrows(ExecutionException.class, () -> journal.sync().get());
+            journal.sync().get();
+        }
+    }
+
+    @Test
+    public void testUnexpectedWriterErrorFailsTheBatchAndKeepsTheWriterRunning() throws Exception {
+        Path file = tempDir.resolve("unexpected.journal");
+        AtomicBoolean failNext = new AtomicBoolean();
+        RegistrationJournal.BatchWriter flaky = (channel, records) -> {
+            if (failNext.getAndSet(false)) {
+                throw new IllegalStateException("Injected bug");
+            }
+            return channel.write(records);
+        };
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(1), 16, flaky)) {
+            failNext.set(true);
+            CompletableFuture<Void> lost = journal.append(JournalEntry.userActivated("lost@example.com", true));
+            assertThrows(ExecutionException.class, () -> lost.get(5, TimeUnit.SECONDS));
+            journal.append(JournalEntry.userActivated("kept@example.com", true)).get(5, TimeUnit.SECONDS);
+        }
+
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(1), 16)) {
+            List<String> replayed = new ArrayList<>();
+            journal.replay(entry -> replayed.add(entry.getKey()));
+            assertEquals(List.of("kept@example.com"), replayed);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package nl.blitz.userregistration;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manual load test: offers far more registrations than the email stage can absorb and prints
+ * latency percentiles for admitted and rejected requests. Not run as part of the test suite.
+ */
+public class RegistrationOverloadBenchmark {
+    private static final int CLIENT_THREADS = 256;
+    private static final int REQUESTS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        UserRegistration registration = new UserRegistration();
+        registration.setAdmissionControl(new AdmissionControl(
+                new RateLimiter(5, Duration.ofMinutes(2)),
+                new RateLimiter(50, Duration.ofMillis(100)),
+                Runtime.getRuntime().availableProcessors(),
+                16));
+
+        ConcurrentLinkedQueue<Long> admitted = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Long> rejected = new ConcurrentLinkedQueue<>();
+        AtomicInteger sequence = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            clients.execute(() -> {
+                int n = sequence.incrementAndGet();
+                long begin = System.nanoTime();
+                RegistrationResult result = registration.registerUser(
+                        "caller-" + (n % 64), "user" + n + "@example.com", "SecurePass123");
+                long latency = System.nanoTime() - begin;
+                (result.isSuccess() ? admitted : rejected).add(latency);
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d requests in %.1f s%n", REQUESTS, seconds);
+        report("admitted", admitted);
+        report("rejected", rejected);
+    }
+
+    private static void report(String label, ConcurrentLinkedQueue<Long> samples) {
+        long[] sorted = samples.stream().mapToLong(Long::longValue).toArray();
+        if (sorted.length == 0) {
+            System.out.printf("%-8s count=0%n", label);
+            return;
+        }
+        Arrays.sort(sorted);
+        System.out.printf("%-8s count=%d p50=%.3f ms p99=%.3f ms max=%.3f ms%n", label, sorted.length,
+                percentile(sorted, 0.50), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1e6;
+    }
+}
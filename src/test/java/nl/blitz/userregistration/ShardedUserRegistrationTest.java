@@ -0,0 +1,257 @@
+package nl.blitz.userregistration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedUserRegistrationTest {
+    private static final String PASSWORD = "Password123";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testUsersAreSpreadOverNodesAndGathered() {
+        ShardedUserRegistration service = new ShardedUserRegistration();
+        UserRegistration a = node();
+        UserRegistration b = node();
+        UserRegistration c = node();
+        service.addNode("a", a);
+        service.addNode("b", b);
+        service.addNode("c", c);
+
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            tokens.add(service.registerUser("user" + i + "@example.com", PASSWORD).getVerificationToken());
+        }
+
+        assertEquals(30, service.getAllUsers().size());
+        assertEquals(30, a.getAllUsers().size() + b.getAllUsers().size() + c.getAllUsers().size());
+        assertTrue(a.getAllUsers().size() > 0 && b.getAllUsers().size() > 0 && c.getAllUsers().size() > 0);
+        assertSame(service.getNodeFor("user7@example.com"), service.getNodeFor("USER7@example.com"));
+        assertTrue(service.userExists("USER7@example.com"));
+        assertEquals("user7@example.com", service.getVerificationToken(tokens.get(7)).getEmail());
+        assertFalse(service.registerUser("User7@Example.com", PASSWORD).isSuccess());
+        assertEquals("user29@example.com", service.getLastVerificationEmailSentTo());
+    }
+
+    @Test
+    public void testRebalancingMovesOnlyAffectedUsersAndKeepsState() {
+        ShardedUserRegistration service = new ShardedUserRegistration();
+        UserRegistration a = node();
+        UserRegistration b = node();
+        service.addNode("a", a);
+        service.addNode("b", b);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            tokens.add(service.registerUser("user" + i + "@example.com", PASSWORD).getVerificationToken());
+        }
+        assertTrue(service.activateAccount("user0@example.com", tokens.get(0)));
+        List<UserRegistration> ownersBefore = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ownersBefore.add(service.getNodeFor("user" + i + "@example.com"));
+        }
+
+        UserRegistration c = node();
+        service.addNode("c", c);
+
+        for (int i = 0; i < 40; i++) {
+            UserRegistration owner = service.getNodeFor("user" + i + "@example.com");
+            // A user either stays put or moves to the new node
+            assertTrue(owner == ownersBefore.get(i) || owner == c);
+            assertNotNull(owner.getUserByEmail("user" + i + "@example.com"));
+        }
+        assertEquals(40, service.getAllUsers().size());
+        assertTrue(c.getAllUsers().size() > 0);
+
+        service.removeNode("a");
+        assertEquals(40, service.getAllUsers().size());
+        assertEquals(0, a.getAllUsers().size());
+        assertTrue(service.isAccountActivated("user0@example.com"));
+        assertFalse(service.activateAccount("user0@example.com", tokens.get(0)));
+        for (int i = 1; i < 40; i++) {
+            assertTrue(service.activateAccount("user" + i + "@example.com", tokens.get(i)));
+        }
+    }
+
+    @Test
+    public void testFailedImportLeavesUsersOnTheSource() {
+        // A throwaway ring with the same node ids tells which users will move to b
+        ShardedUserRegistration probe = new ShardedUserRegistration();
+        probe.addNode("a", node());
+        UserRegistration probeB = node();
+        probe.addNode("b", probeB);
+
+        ShardedUserRegistration service = new ShardedUserRegistration();
+        UserRegistration a = node();
+        service.addNode("a", a);
+        String lastMovingEmail = null;
+        for (int i = 0; i < 40; i++) {
+            String email = "user" + i + "@example.com";
+            service.registerUser(email, PASSWORD);
+            if (probe.getNodeFor(email) == probeB) {
+                lastMovingEmail = email;
+            }
+        }
+        assertNotNull(lastMovingEmail);
+        UserRegistration b = node();
+        b.registerUser(lastMovingEmail, "Different456");
+
+        assertThrows(IllegalStateException.class, () -> service.addNode("b", b));
+
+        // b was taken out again and the users it had been given went back to a
+        assertEquals(List.of("a"), new ArrayList<>(service.getNodeIds()));
+        assertEquals(40, a.getAllUsers().size());
+        assertEquals(1, b.getAllUsers().size());
+        assertTrue(b.verifyPassword("Different456", b.getUserByEmail(lastMovingEmail).getHashedPassword()));
+        for (int i = 0; i < 40; i++) {
+            assertSame(a, service.getNodeFor("user" + i + "@example.com"));
+        }
+
+        UserRegistration c = node();
+        service.addNode("c", c);
+        assertEquals(40, service.getAllUsers().size());
+        assertTrue(c.getAllUsers().size() > 0);
+    }
+
+    @Test
+    public void testUserLeftOnTheTargetByAnInterruptedMoveCountsAsMoved() throws Exception {
+        ShardedUserRegistration probe = new ShardedUserRegistration();
+        probe.addNode("a", node());
+        UserRegistration probeB = node();
+        probe.addNode("b", probeB);
+        ShardedUserRegistration service = new ShardedUserRegistration();
+        UserRegistration a = node();
+        service.addNode("a", a);
+        String token = null;
+        String moving = null;
+        for (int i = 0; moving == null; i++) {
+            String email = "user" + i + "@example.com";
+            token = service.registerUser(email, PASSWORD).getVerificationToken();
+            if (probe.getNodeFor(email) == probeB) {
+                moving = email;
+            }
+        }
+        assertTrue(service.activateAccount(moving, token));
+
+        // As if b had imported the user, unactivated, and the source crashed before removing it
+        Path file = tempDir.resolve("leftover.journal");
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(1), 16)) {
+            journal.append(JournalEntry.userCreated(a.getUserByEmail(moving))).get();
+        }
+        try (RegistrationJournal journal = new RegistrationJournal(file, Duration.ofMillis(1), 16)) {
+            UserRegistration b = new UserRegistration(journal);
+            service.addNode("b", b);
+
+            assertNull(a.getUserByEmail(moving));
+            assertSame(b, service.getNodeFor(moving));
+            assertTrue(service.isAccountActivated(moving));
+            assertEquals(1, b.getAllUsers().size());
+        }
+    }
+
+    @Test
+    public void testUsersStayOnTheSourceUntilTheTargetJournalIsDurable() throws IOException {
+        ShardedUserRegistration service = new ShardedUserRegistration();
+        UserRegistration a = node();
+        service.addNode("a", a);
+        for (int i = 0; i < 40; i++) {
+            service.registerUser("user" + i + "@example.com", PASSWORD);
+        }
+
+        try (RegistrationJournal failing = new RegistrationJournal(tempDir.resolve("b.journal"),
+                Duration.ofMillis(1), 16, (channel, records) -> {
+                    throw new IOException("Injected write failure");
+                })) {
+            UserRegistration b = new UserRegistration(failing);
+            b.setEmailDelayMillis(0);
+            assertThrows(CompletionException.class, () -> service.addNode("b", b));
+
+            assertEquals(40, a.getAllUsers().size());
+            assertEquals(0, b.getAllUsers().size());
+            assertTrue(service.userExists("user7@example.com"));
+        }
+    }
+
+    @Test
+    public void testSpentSignedTokensStaySpentWhenUsersMove() {
+        ShardedUserRegistration service = new ShardedUserRegistration();
+        service.setTokenSigner(new TokenSigner(TokenSigner.generateKey()));
+        service.addNode("a", node());
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String email = "user" + i + "@example.com";
+            tokens.add(service.registerUser(email, PASSWORD).getVerificationToken());
+            assertTrue(service.activateAccount(email, tokens.get(i)));
+        }
+
+        UserRegistration b = node();
+        service.addNode("b", b);
+
+        assertTrue(b.getAllUsers().size() > 0);
+        for (int i = 0; i < 40; i++) {
+            assertFalse(service.verifyToken(tokens.get(i), "user" + i + "@example.com"));
+            assertFalse(service.activateAccount("user" + i + "@example.com", tokens.get(i)));
+        }
+    }
+
+    @Test
+    public void testOperationsKeepWorkingWhileUsersMove() throws Exception {
+        ShardedUserRegistration service = new ShardedUserRegistration(
+                ShardedUserRegistration.DEFAULT_VIRTUAL_NODES, 16);
+        service.addNode("a", node());
+        for (int i = 0; i < 1_000; i++) {
+            service.registerUser("user" + i + "@example.com", PASSWORD);
+        }
+
+        List<Throwable> errors = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int round = 0; round < 50; round++) {
+                    for (int i = 0; i < 1_000; i += 3) {
+                        if (!service.userExists("user" + i + "@example.com")) {
+                            throw new AssertionError("Lost user" + i + " during rebalance");
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            }
+        });
+        reader.start();
+        service.addNode("b", node());
+        service.addNode("c", node());
+        service.removeNode("a");
+        reader.join();
+
+        assertEquals(List.of(), errors);
+        assertEquals(1_000, service.getAllUsers().size());
+        assertEquals(List.of("b", "c"), new ArrayList<>(service.getNodeIds()));
+    }
+
+    @Test
+    public void testLastNodeCannotBeRemoved() {
+        ShardedUserRegistration service = new ShardedUserRegistration();
+        service.addNode("a", node());
+
+        assertThrows(IllegalStateException.class, () -> service.removeNode("a"));
+        assertNull(service.removeNode("unknown"));
+        assertThrows(IllegalArgumentException.class, () -> service.addNode("a", node()));
+    }
+
+    private static UserRegistration node() {
+        UserRegistration node = new UserRegistration();
+        node.setEmailDelayMillis(0);
+        return node;
+    }
+}
@@ -0,0 +1,90 @@
+package nl.blitz.userregistration;
+
+import nl.blitz.replay.VirtualClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenSignerTest {
+    private static final Instant NOW = Instant.parse("2024-03-01T10:00:00Z");
+
+    @Test
+    public void testSignedTokenRoundTrip() {
+        TokenSigner signer = new TokenSigner(TokenSigner.generateKey());
+        String token = signer.sign("User@Example.com", NOW, NOW.plus(Duration.ofHours(24)));
+
+        TokenSigner.SignedToken signed = signer.decode(token);
+        assertNotNull(signed);
+        assertEquals(NOW, signed.getCreatedAt());
+        assertEquals(NOW.plus(Duration.ofHours(24)), signed.getExpiresAt());
+        assertTrue(signer.isIssuedFor(signed, "user@example.com"));
+        assertFalse(signer.isIssuedFor(signed, "other@example.com"));
+    }
+
+    @Test
+    public void testTamperedOrForeignTokensAreRejected() {
+        TokenSigner signer = new TokenSigner(TokenSigner.generateKey());
+        String token = signer.sign("user@example.com", NOW, NOW.plus(Duration.ofHours(24)));
+
+        char last = token.charAt(30);
+        String tampered = token.substring(0, 30) + (last == 'A' ? 'B' : 'A') + token.substring(31);
+        assertNull(signer.decode(tampered));
+        assertNull(signer.decode(token.substring(1)));
+        assertNull(signer.decode("VERIFY-1234567890ABCDEF"));
+        assertNull(new TokenSigner(TokenSigner.generateKey()).decode(token));
+    }
+
+    @Test
+    public void testSpentTokensAreForgottenOnceExpired() {
+        SpentTokenSet spent = new SpentTokenSet();
+        Instant expiresAt = NOW.plus(Duration.ofHours(24));
+
+        assertTrue(spent.markSpent(42L, expiresAt, NOW));
+        assertFalse(spent.markSpent(42L, expiresAt, NOW));
+        assertTrue(spent.markSpent(0L, expiresAt, NOW));
+        assertTrue(spent.isSpent(42L, expiresAt));
+        assertEquals(2, spent.size());
+
+        spent.markSpent(7L, expiresAt.plus(Duration.ofHours(24)), expiresAt.plus(Duration.ofHours(2)));
+        assertFalse(spent.isSpent(42L, expiresAt));
+        assertEquals(1, spent.size());
+    }
+
+    @Test
+    public void testRegistrationWithSignedTokensNeedsNoTokenStorage() {
+        VirtualClock clock = new VirtualClock(NOW);
+        UserRegistration registration = new UserRegistration();
+        registration.setClock(clock);
+        registration.setTokenSigner(new TokenSigner(TokenSigner.generateKey()));
+
+        RegistrationResult result = registration.registerUser("user@example.com", "Password123!");
+        assertTrue(result.isSuccess());
+        String token = result.getVerificationToken();
+
+        VerificationToken view = registration.getVerificationToken(token);
+        assertEquals("user@example.com", view.getEmail());
+        assertFalse(view.isUsed());
+        assertFalse(registration.verifyToken(token, "other@example.com"));
+
+        assertTrue(registration.activateAccount("user@example.com", token));
+        assertTrue(registration.isAccountActivated("user@example.com"));
+        assertTrue(registration.getVerificationToken(token).isUsed());
+        assertFalse(registration.activateAccount("user@example.com", token));
+    }
+
+    @Test
+    public void testSignedTokensExpire() {
+        VirtualClock clock = new VirtualClock(NOW);
+        UserRegistration registration = new UserRegistration();
+        registration.setClock(clock);
+        registration.setTokenSigner(new TokenSigner(TokenSigner.generateKey()));
+        String token = registration.registerUser("user@example.com", "Password123!").getVerificationToken();
+
+        clock.setInstant(NOW.plus(Duration.ofHours(25)));
+        assertFalse(registration.verifyToken(token, "user@example.com"));
+        assertFalse(registration.activateAccount("user@example.com", token));
+    }
+}
@@ -0,0 +1,121 @@
+package nl.blitz.userregistration;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserIndexTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 15, 12, 0);
+
+    @Test
+    public void testRangeQueriesOnRegistrationDate() {
+        UserIndex index = new UserIndex();
+        User old = new User("old@example.com", "hash", NOW.minusDays(10));
+        User recent = new User("recent@example.com", "hash", NOW.minusDays(2));
+        User activatedOld = new User("active@example.com", "hash", NOW.minusDays(9));
+        index.add(old);
+        index.add(recent);
+        index.add(activatedOld);
+        activatedOld.setActivated(true);
+
+        assertEquals(List.of("old@example.com", "active@example.com"),
+                emails(index.registeredBefore(NOW.minusDays(7)).collect(Collectors.toList())));
+        assertEquals(List.of("old@example.com"),
+                emails(index.unactivatedRegisteredBefore(NOW.minusDays(7)).collect(Collectors.toList())));
+        assertEquals(List.of("recent@example.com"),
+                emails(index.registeredBetween(NOW.minusDays(3), NOW).collect(Collectors.toList())));
+    }
+
+    @Test
+    public void testProfileIndexesFollowSetters() {
+        UserIndex index = new UserIndex();
+        User user = new User("user@example.com", "hash", NOW);
+        user.setProfileLanguage("en");
+        index.add(user);
+
+        user.setProfileLanguage("nl");
+        user.setProfileTimezone("Europe/Amsterdam");
+
+        assertEquals(0, index.byLanguage("en").count());
+        assertEquals(1, index.byLanguage("nl").count());
+        assertEquals(1, index.byTimezone("Europe/Amsterdam").count());
+        assertEquals(Integer.valueOf(1), index.countsByLanguage().get("nl"));
+    }
+
+    @Test
+    public void testActivationBitmapStaysConsistentUnderConcurrentUpdates() throws Exception {
+        UserIndex index = new UserIndex();
+        int count = 5_000;
+        User[] users = new User[count];
+        for (int i = 0; i < count; i++) {
+            users[i] = new User("user" + i + "@example.com", "hash", NOW.plusSeconds(i));
+            index.add(users[i]);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int round = 0; round < 20; round++) {
+                    for (User user : users) {
+                        user.setActivated(!user.isActivated());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        long expected = 0;
+        for (User user : users) {
+            if (user.isActivated()) {
+                expected++;
+            }
+        }
+        assertEquals(expected, index.getActivatedCount());
+        assertEquals(expected, index.activatedUsers().count());
+        assertTrue(index.activatedUsers().allMatch(User::isActivated));
+    }
+
+    @Test
+    public void testOrdinalsOfRemovedUsersAreReused() {
+        UserIndex index = new UserIndex();
+        User removed = new User("removed@example.com", "hash", NOW);
+        index.add(removed);
+        removed.setActivated(true);
+        index.remove(removed);
+
+        User added = new User("added@example.com", "hash", NOW);
+        index.add(added);
+
+        assertEquals(0, added.getOrdinal());
+        assertEquals(0, index.getActivatedCount());
+        assertEquals(0, index.activatedUsers().count());
+        added.setActivated(true);
+        assertEquals(List.of("added@example.com"), emails(index.activatedUsers().collect(Collectors.toList())));
+    }
+
+    @Test
+    public void testRegistrationMaintainsIndex() {
+        UserRegistration registration = new UserRegistration();
+        String token = registration.registerUser("user@example.com", "SecurePass123").getVerificationToken();
+        registration.registerUser("other@example.com", "SecurePass123");
+
+        registration.activateAccount("user@example.com", token);
+
+        UserIndex index = registration.getUserIndex();
+        assertEquals(2, index.size());
+        assertEquals(List.of("user@example.com"), emails(index.activatedUsers().collect(Collectors.toList())));
+        assertEquals(2, index.byLanguage("en").count());
+    }
+
+    private static List<String> emails(List<User> users) {
+        return users.stream().map(User::getEmail).collect(Collectors.toList());
+    }
+}